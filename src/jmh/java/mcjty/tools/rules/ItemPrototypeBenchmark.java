@@ -0,0 +1,78 @@
+package mcjty.tools.rules;
+
+import mcjty.tools.varia.AliasTable;
+import net.minecraft.enchantment.Enchantment;
+import net.minecraft.init.Bootstrap;
+import net.minecraft.init.Items;
+import net.minecraft.init.PotionTypes;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraft.potion.PotionUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing out an item from the prototypes of a give/drop/held item
+ * action. 'doubleCopy' is what these actions did before (the random item was
+ * copied and then copied again), 'singleCopy' is what they do now. 'shared'
+ * hands out the prototype itself. That is not safe (the receiver owns and
+ * modifies the stack) but shows what sharing the NBT could save at most.
+ *
+ * Run with 'gradlew jmh'. Add '-PjmhArgs="-prof gc"' to see the allocation per firing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemPrototypeBenchmark {
+
+    private final Random random = new Random(1234);
+    private AliasTable<ItemStack> table;
+
+    @Setup
+    public void setup() {
+        Bootstrap.register();
+
+        ItemStack sword = new ItemStack(Items.DIAMOND_SWORD);
+        sword.addEnchantment(Enchantment.getEnchantmentByLocation("sharpness"), 3);
+        sword.addEnchantment(Enchantment.getEnchantmentByLocation("looting"), 2);
+        sword.setStackDisplayName("Slayer");
+        NBTTagList lore = new NBTTagList();
+        lore.appendTag(new NBTTagString("Taken from a fallen hero"));
+        lore.appendTag(new NBTTagString("Still sharp"));
+        sword.getOrCreateSubCompound("display").setTag("Lore", lore);
+
+        ItemStack potion = PotionUtils.addPotionToItemStack(new ItemStack(Items.POTIONITEM), PotionTypes.STRONG_HEALING);
+        ItemStack bones = new ItemStack(Items.BONE, 4);
+
+        List<Pair<Float, ItemStack>> items = new ArrayList<>();
+        items.add(Pair.of(1.0f, sword));
+        items.add(Pair.of(2.0f, potion));
+        items.add(Pair.of(4.0f, bones));
+        table = new AliasTable<>(items);
+    }
+
+    @Benchmark
+    public ItemStack doubleCopy() {
+        ItemStack item = table.get(random).copy();
+        return item.copy();
+    }
+
+    @Benchmark
+    public ItemStack singleCopy() {
+        return table.get(random).copy();
+    }
+
+    @Benchmark
+    public ItemStack shared() {
+        return table.get(random);
+    }
+}
@@ -0,0 +1,112 @@
+package mcjty.tools.typed;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the array backed AttributeMap with the HashMap based version it
+ * replaced. A rule is compiled by calling has() for every key that an action or
+ * check could use (about 80) while only a few of them are actually present.
+ *
+ * Run with 'gradlew jmh'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeMapBenchmark {
+
+    private static final int KEY_COUNT = 80;
+    private static final int PRESENT_EVERY = 6;
+
+    /**
+     * The previous implementation of AttributeMap
+     */
+    public static class HashAttributeMap {
+        private final Map<Key<?>, Object> values = new HashMap<>();
+
+        public <A> boolean has(Key<A> key) {
+            return values.containsKey(key);
+        }
+
+        public <A> void set(Key<A> key, A value) {
+            values.put(key, value);
+        }
+
+        public <A> A get(Key<A> key) {
+            return (A) values.get(key);
+        }
+    }
+
+    private final List<Key<String>> keys = new ArrayList<>();
+    private AttributeMap arrayMap;
+    private AttributeMap frozenMap;
+    private HashAttributeMap hashMap;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add(Key.create(Type.STRING, "key" + i));
+        }
+        arrayMap = new AttributeMap();
+        hashMap = new HashAttributeMap();
+        for (int i = 0; i < KEY_COUNT; i += PRESENT_EVERY) {
+            arrayMap.set(keys.get(i), "value" + i);
+            hashMap.set(keys.get(i), "value" + i);
+        }
+        frozenMap = arrayMap.freeze();
+    }
+
+    @Benchmark
+    public void compileArrayMap(Blackhole blackhole) {
+        compile(arrayMap, blackhole);
+    }
+
+    @Benchmark
+    public void compileFrozenMap(Blackhole blackhole) {
+        compile(frozenMap, blackhole);
+    }
+
+    @Benchmark
+    public void compileHashMap(Blackhole blackhole) {
+        for (Key<String> key : keys) {
+            if (hashMap.has(key)) {
+                blackhole.consume(hashMap.get(key));
+            }
+        }
+    }
+
+    private void compile(AttributeMap map, Blackhole blackhole) {
+        for (Key<String> key : keys) {
+            if (map.has(key)) {
+                blackhole.consume(map.get(key));
+            }
+        }
+    }
+
+    @Benchmark
+    public AttributeMap buildArrayMap() {
+        AttributeMap map = new AttributeMap();
+        for (int i = 0; i < KEY_COUNT; i += PRESENT_EVERY) {
+            map.set(keys.get(i), "value");
+        }
+        return map;
+    }
+
+    @Benchmark
+    public HashAttributeMap buildHashMap() {
+        HashAttributeMap map = new HashAttributeMap();
+        for (int i = 0; i < KEY_COUNT; i += PRESENT_EVERY) {
+            map.set(keys.get(i), "value");
+        }
+        return map;
+    }
+}
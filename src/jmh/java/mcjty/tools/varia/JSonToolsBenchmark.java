@@ -0,0 +1,95 @@
+package mcjty.tools.varia;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import mcjty.tools.typed.AttributeMap;
+import mcjty.tools.typed.Key;
+import mcjty.tools.typed.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stream based JSonTools helpers with the forEach variants that
+ * GenericAttributeMapFactory uses now. A generated rule corpus is parsed into
+ * attribute maps: every rule has a multi valued integer attribute (a single
+ * value or an array) and a multi valued string attribute.
+ *
+ * Run with 'gradlew jmh'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSonToolsBenchmark {
+
+    private static final int RULE_COUNT = 5000;
+    private static final int MAX_VALUES = 8;
+
+    private static final Key<Integer> DIMENSION = Key.create(Type.INTEGER, "bench_dimension");
+    private static final Key<String> MOD = Key.create(Type.STRING, "bench_mod");
+
+    private final List<JsonObject> rules = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        for (int i = 0; i < RULE_COUNT; i++) {
+            JsonObject rule = new JsonObject();
+            int count = 1 + random.nextInt(MAX_VALUES);
+            if (count == 1) {
+                rule.addProperty("dimension", random.nextInt(100) - 50);
+                rule.addProperty("mod", "mod" + random.nextInt(20));
+            } else {
+                JsonArray dimensions = new JsonArray();
+                JsonArray mods = new JsonArray();
+                for (int j = 0; j < count; j++) {
+                    dimensions.add(random.nextInt(100) - 50);
+                    mods.add("mod" + random.nextInt(20));
+                }
+                rule.add("dimension", dimensions);
+                rule.add("mod", mods);
+            }
+            rules.add(rule);
+        }
+    }
+
+    @Benchmark
+    public int parseWithStreams() {
+        int size = 0;
+        for (JsonObject rule : rules) {
+            AttributeMap map = new AttributeMap();
+            JSonTools.getElement(rule, "dimension").ifPresent(element -> JSonTools.asArrayOrSingle(element)
+                    .forEach(s -> map.addInt(DIMENSION, s.getAsInt())));
+            JSonTools.getElement(rule, "mod").ifPresent(element -> JSonTools.asArrayOrSingle(element)
+                    .map(JsonElement::getAsString)
+                    .forEach(s -> map.addListNonnull(MOD, s)));
+            size += map.getIntList(DIMENSION).size() + map.getList(MOD).size();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int parseWithForEach() {
+        int size = 0;
+        for (JsonObject rule : rules) {
+            AttributeMap map = new AttributeMap();
+            JsonElement dimension = rule.get("dimension");
+            if (dimension != null) {
+                JSonTools.forEachIntArrayOrSingle(dimension, v -> map.addInt(DIMENSION, v));
+            }
+            JsonElement mod = rule.get("mod");
+            if (mod != null) {
+                JSonTools.forEachArrayOrSingle(mod, e -> map.addListNonnull(MOD, e.getAsString()));
+            }
+            size += map.getIntList(DIMENSION).size() + map.getList(MOD).size();
+        }
+        return size;
+    }
+}
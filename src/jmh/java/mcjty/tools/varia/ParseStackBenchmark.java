@@ -0,0 +1,99 @@
+package mcjty.tools.varia;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.minecraft.init.Bootstrap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the item specs of a rule pack with heavy duplication (a few dozen
+ * distinct specs used thousands of times) with and without the stack template
+ * cache in Tools. The uncached case clears the cache before every spec. The
+ * vanilla registries are set up with Bootstrap so that the items can be found.
+ *
+ * Run with 'gradlew jmh'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseStackBenchmark {
+
+    private static final int PACK_SIZE = 4000;
+
+    private static final String[] STRING_SPECS = {
+            "minecraft:stone", "minecraft:dirt", "minecraft:diamond", "minecraft:iron_ingot",
+            "minecraft:gold_ingot", "minecraft:bone", "minecraft:rotten_flesh", "minecraft:arrow",
+            "minecraft:wool@3", "minecraft:wool@14", "minecraft:dye@4", "minecraft:planks@2",
+            "minecraft:diamond_sword/{display:{Name:\"Slayer\"},ench:[{id:16s,lvl:3s}]}",
+            "minecraft:bow/{ench:[{id:48s,lvl:2s},{id:51s,lvl:1s}]}",
+            "minecraft:iron_helmet/{display:{Name:\"Guard\",Lore:[\"Old\",\"Rusty\"]}}",
+            "minecraft:potion/{Potion:\"minecraft:strong_healing\"}"
+    };
+
+    private static final String[] JSON_SPECS = {
+            "{\"item\":\"minecraft:emerald\",\"count\":3}",
+            "{\"item\":\"minecraft:emerald\",\"count\":3,\"factor\":0.5}",
+            "{\"item\":\"minecraft:golden_apple\",\"damage\":1}",
+            "{\"item\":\"minecraft:diamond_pickaxe\",\"nbt\":{\"ench\":[{\"id\":32,\"lvl\":5}]}}",
+            "{\"item\":\"minecraft:diamond_pickaxe\",\"nbt\":{\"ench\":[{\"id\":32,\"lvl\":5}]},\"factor\":2}",
+            "{\"item\":\"minecraft:book\",\"nbt\":{\"display\":{\"Name\":\"Journal\"}}}"
+    };
+
+    private final Logger logger = LogManager.getLogger("ParseStackBenchmark");
+    private final List<String> stringPack = new ArrayList<>();
+    private final List<JsonObject> jsonPack = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        Bootstrap.register();
+        Random random = new Random(1234);
+        JsonParser parser = new JsonParser();
+        for (int i = 0; i < PACK_SIZE; i++) {
+            stringPack.add(STRING_SPECS[random.nextInt(STRING_SPECS.length)]);
+            jsonPack.add(parser.parse(JSON_SPECS[random.nextInt(JSON_SPECS.length)]).getAsJsonObject());
+        }
+        Collections.shuffle(stringPack, random);
+    }
+
+    @Benchmark
+    public void parseStringsCached(Blackhole blackhole) {
+        for (String spec : stringPack) {
+            blackhole.consume(Tools.parseStack(spec, logger));
+        }
+    }
+
+    @Benchmark
+    public void parseStringsUncached(Blackhole blackhole) {
+        for (String spec : stringPack) {
+            Tools.clearStackCache();
+            blackhole.consume(Tools.parseStack(spec, logger));
+        }
+    }
+
+    @Benchmark
+    public void parseJsonCached(Blackhole blackhole) {
+        for (JsonObject spec : jsonPack) {
+            blackhole.consume(Tools.parseStackWithFactor(spec, logger));
+        }
+    }
+
+    @Benchmark
+    public void parseJsonUncached(Blackhole blackhole) {
+        for (JsonObject spec : jsonPack) {
+            Tools.clearStackCache();
+            blackhole.consume(Tools.parseStackWithFactor(spec, logger));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package mcjty.tools.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * All cached structure information for a single dimension. For every queried
+ * chunk the structure bounding boxes that intersect it are remembered. These
+ * are kept per structure in access order so that the least recently used ones
+ * can be evicted first. The structure indices themselves are also kept in access
+ * order so that the least recently used ones can be dropped when the dimension
+ * holds too many boxes
+ */
+class DimensionStructureCache {
+
+    // Structure name -> (chunk pos -> indices of the boxes in the structure index)
+    private final Map<String, LinkedHashMap<Long, int[]>> chunks = new HashMap<>();
+
+    // Structure name -> world time at which we found out there is no data for it
+    private final Map<String, Long> missingData = new HashMap<>();
+
+    // Structure name -> parsed structure data (in access order)
+    private final LinkedHashMap<String, StructureIndex> indices = new LinkedHashMap<>(16, .75f, true);
+
+    // Structure name -> world time at which the index was last checked for new structures
+    private final Map<String, Long> lastRefresh = new HashMap<>();
+
+    // World time at which new chunks were last generated in this dimension
+    private long lastGenerated = -1;
+
+    private int entryCount = 0;
+
+    public int[] get(String structure, long chunkpos) {
+        LinkedHashMap<Long, int[]> map = chunks.get(structure);
+        if (map == null) {
+            return null;
+        }
+        return map.get(chunkpos);
+    }
+
+    /**
+     * Add a result and return the amount of entries that had to be evicted
+     * because of the given limits
+     */
+    public int put(String structure, long chunkpos, int[] boxes, int maxPerStructure, int maxPerDimension) {
+        LinkedHashMap<Long, int[]> map = chunks.computeIfAbsent(structure, s -> new LinkedHashMap<>(16, .75f, true));
+        if (map.put(chunkpos, boxes) == null) {
+            entryCount++;
+        }
+        int evicted = 0;
+        while (map.size() > maxPerStructure) {
+            evictEldest(map);
+            evicted++;
+        }
+        while (entryCount > maxPerDimension) {
+            evictEldest(getLargest());
+            evicted++;
+        }
+        return evicted;
+    }
+
+    public void remove(String structure, long chunkpos) {
+        LinkedHashMap<Long, int[]> map = chunks.get(structure);
+        if (map != null && map.remove(chunkpos) != null) {
+            entryCount--;
+        }
+    }
+
+    private void evictEldest(LinkedHashMap<Long, int[]> map) {
+        Iterator<Long> iterator = map.keySet().iterator();
+        iterator.next();
+        iterator.remove();
+        entryCount--;
+    }
+
+    private LinkedHashMap<Long, int[]> getLargest() {
+        LinkedHashMap<Long, int[]> largest = null;
+        for (LinkedHashMap<Long, int[]> map : chunks.values()) {
+            if (largest == null || map.size() > largest.size()) {
+                largest = map;
+            }
+        }
+        return largest;
+    }
+
+    public Long getMissingSince(String structure) {
+        return missingData.get(structure);
+    }
+
+    public void setMissing(String structure, long time) {
+        missingData.put(structure, time);
+    }
+
+    public void clearMissing(String structure) {
+        missingData.remove(structure);
+    }
+
+    public StructureIndex getIndex(String structure) {
+        return indices.get(structure);
+    }
+
+    /**
+     * Set the index of a structure and return the amount of other indices that had
+     * to be evicted to stay below the given amount of boxes. The index that is set
+     * is always kept, even if it is larger than the limit
+     */
+    public int setIndex(String structure, StructureIndex index, long time, int maxBoxes) {
+        indices.put(structure, index);
+        lastRefresh.put(structure, time);
+        int count = getIndexedBoxCount();
+        int evicted = 0;
+        Iterator<Map.Entry<String, StructureIndex>> iterator = indices.entrySet().iterator();
+        while (count > maxBoxes && iterator.hasNext()) {
+            Map.Entry<String, StructureIndex> entry = iterator.next();
+            if (entry.getKey().equals(structure)) {
+                continue;
+            }
+            count -= entry.getValue().getBoxCount();
+            iterator.remove();
+            lastRefresh.remove(entry.getKey());
+            // The cached box indices belong to the evicted index
+            LinkedHashMap<Long, int[]> map = chunks.remove(entry.getKey());
+            if (map != null) {
+                entryCount -= map.size();
+            }
+            evicted++;
+        }
+        return evicted;
+    }
+
+    public Long getLastRefresh(String structure) {
+        return lastRefresh.get(structure);
+    }
+
+    public long getLastGenerated() {
+        return lastGenerated;
+    }
+
+    public void setLastGenerated(long time) {
+        lastGenerated = time;
+    }
+
+    public int getIndexedBoxCount() {
+        int count = 0;
+        for (StructureIndex index : indices.values()) {
+            count += index.getBoxCount();
+        }
+        return count;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+}
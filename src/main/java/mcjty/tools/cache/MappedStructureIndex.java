@@ -0,0 +1,253 @@
+package mcjty.tools.cache;
+
+import net.minecraft.util.math.ChunkPos;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Read only structure index that lives in a memory mapped file next to the
+ * structure data it was made from. The file is only valid as long as the size
+ * and modification time of that structure data file are unchanged.
+ *
+ * Layout (big endian):
+ *   header: magic, version, source size, source modification time, key count, box count, chunk count
+ *   keys:   sorted chunk positions of all structure starts (one per NBT key)
+ *   boxes:  minX, minY, minZ, maxX, maxY, maxZ for every box
+ *   chunks: sorted chunk positions that intersect at least one box
+ *   offsets: for every chunk the offset of its first box id (plus one extra end offset)
+ *   ids:    box ids per chunk
+ */
+class MappedStructureIndex {
+
+    private static final int MAGIC = 0x4d435349;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    @Nonnull private final ByteBuffer buffer;
+    private final int keyCount;
+    private final int boxCount;
+    private final int chunkCount;
+    private final int idCount;
+    private final int keysOffset;
+    private final int boxesOffset;
+    private final int chunksOffset;
+    private final int offsetsOffset;
+    private final int idsOffset;
+
+    private MappedStructureIndex(@Nonnull ByteBuffer buffer, int keyCount, int boxCount, int chunkCount, int idCount) {
+        this.buffer = buffer;
+        this.keyCount = keyCount;
+        this.boxCount = boxCount;
+        this.chunkCount = chunkCount;
+        this.idCount = idCount;
+        keysOffset = HEADER_SIZE;
+        boxesOffset = keysOffset + keyCount * 8;
+        chunksOffset = boxesOffset + boxCount * 6 * 4;
+        offsetsOffset = chunksOffset + chunkCount * 8;
+        idsOffset = offsetsOffset + (chunkCount + 1) * 4;
+    }
+
+    @Nonnull
+    public static File getIndexFile(@Nonnull File dataDir, @Nonnull String structure) {
+        return new File(dataDir, "mcjtytools_" + structure + ".idx");
+    }
+
+    @Nonnull
+    public static File getSourceFile(@Nonnull File dataDir, @Nonnull String structure) {
+        return new File(dataDir, structure + ".dat");
+    }
+
+    /**
+     * Map the index file for the given structure. Returns null if there is no index
+     * file, if it no longer matches the structure data file or if it is damaged
+     */
+    @Nullable
+    public static MappedStructureIndex load(@Nonnull File dataDir, @Nonnull String structure) {
+        File indexFile = getIndexFile(dataDir, structure);
+        File sourceFile = getSourceFile(dataDir, structure);
+        if (!indexFile.exists() || !sourceFile.exists()) {
+            return null;
+        }
+
+        // Only the header and the size of the sections are checked before mapping. A stale
+        // or badly sized file is never mapped (a mapping can't be closed and would keep the
+        // file locked). Offsets and box ids are checked when they are looked up
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "r")) {
+            long size = file.length();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+                return null;
+            }
+            if (file.readLong() != sourceFile.length() || file.readLong() != sourceFile.lastModified()) {
+                return null;
+            }
+            int keyCount = file.readInt();
+            int boxCount = file.readInt();
+            int chunkCount = file.readInt();
+            if (keyCount < 0 || boxCount < 0 || chunkCount < 0) {
+                return null;
+            }
+            long offsetsOffset = HEADER_SIZE + keyCount * 8L + boxCount * 6L * 4L + chunkCount * 8L;
+            long idsOffset = offsetsOffset + (chunkCount + 1L) * 4L;
+            if (idsOffset > size) {
+                return null;
+            }
+            // The first offset is 0 and the last one gives the size of the ids section
+            file.seek(offsetsOffset);
+            if (file.readInt() != 0) {
+                return null;
+            }
+            file.seek(idsOffset - 4);
+            int idCount = file.readInt();
+            if (idCount < 0 || idsOffset + idCount * 4L != size) {
+                return null;
+            }
+            ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedStructureIndex(buffer, keyCount, boxCount, chunkCount, idCount);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write an index file for the given keys (chunk positions of all structure starts)
+     * and boxes. Failing to write is not an error: the index will simply be rebuilt
+     * the next time
+     */
+    public static void write(@Nonnull File dataDir, @Nonnull String structure, @Nonnull long[] keys, @Nonnull int[] boxes, int boxCount) {
+        File sourceFile = getSourceFile(dataDir, structure);
+        if (!sourceFile.exists()) {
+            return;
+        }
+        long sourceSize = sourceFile.length();
+        long sourceModified = sourceFile.lastModified();
+
+        long[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+
+        Map<Long, List<Integer>> chunkBoxes = new TreeMap<>();
+        for (int id = 0; id < boxCount; id++) {
+            int b = id * 6;
+            for (int cx = boxes[b] >> 4; cx <= boxes[b + 3] >> 4; cx++) {
+                for (int cz = boxes[b + 2] >> 4; cz <= boxes[b + 5] >> 4; cz++) {
+                    chunkBoxes.computeIfAbsent(ChunkPos.asLong(cx, cz), c -> new ArrayList<>()).add(id);
+                }
+            }
+        }
+
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("mcjtytools_" + structure, ".tmp", dataDir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(sortedKeys.length);
+                out.writeInt(boxCount);
+                out.writeInt(chunkBoxes.size());
+                for (long key : sortedKeys) {
+                    out.writeLong(key);
+                }
+                for (int i = 0; i < boxCount * 6; i++) {
+                    out.writeInt(boxes[i]);
+                }
+                for (Long chunk : chunkBoxes.keySet()) {
+                    out.writeLong(chunk);
+                }
+                int offset = 0;
+                for (List<Integer> ids : chunkBoxes.values()) {
+                    out.writeInt(offset);
+                    offset += ids.size();
+                }
+                out.writeInt(offset);
+                for (List<Integer> ids : chunkBoxes.values()) {
+                    for (Integer id : ids) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), getIndexFile(dataDir, structure).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public int getBoxCount() {
+        return boxCount;
+    }
+
+    /**
+     * Test if the start at the given chunk position was part of the indexed structure data
+     */
+    public boolean containsKey(long chunkpos) {
+        return binarySearch(keysOffset, keyCount, chunkpos) >= 0;
+    }
+
+    /**
+     * Get the ids of all boxes that intersect the given chunk. Offsets and ids that
+     * are out of range (damaged file) are ignored
+     */
+    @Nonnull
+    public int[] getBoxesInChunk(int chunkX, int chunkZ) {
+        int idx = binarySearch(chunksOffset, chunkCount, ChunkPos.asLong(chunkX, chunkZ));
+        if (idx < 0) {
+            return StructureIndex.EMPTY;
+        }
+        int start = buffer.getInt(offsetsOffset + idx * 4);
+        int end = buffer.getInt(offsetsOffset + idx * 4 + 4);
+        if (start < 0 || end < start || end > idCount) {
+            return StructureIndex.EMPTY;
+        }
+        int[] ids = new int[end - start];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int id = buffer.getInt(idsOffset + i * 4);
+            if (id >= 0 && id < boxCount) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    public boolean isInside(int id, int x, int y, int z) {
+        if (id < 0 || id >= boxCount) {
+            return false;
+        }
+        int b = boxesOffset + id * 6 * 4;
+        return x >= buffer.getInt(b) && y >= buffer.getInt(b + 4) && z >= buffer.getInt(b + 8)
+                && x <= buffer.getInt(b + 12) && y <= buffer.getInt(b + 16) && z <= buffer.getInt(b + 20);
+    }
+
+    private int binarySearch(int offset, int count, long value) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long v = buffer.getLong(offset + mid * 8);
+            if (v < value) {
+                low = mid + 1;
+            } else if (v > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
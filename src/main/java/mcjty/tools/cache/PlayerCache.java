@@ -0,0 +1,59 @@
+package mcjty.tools.cache;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Find the closest player without looking at every player in the world. The
+ * players of a server world are put in a grid that is rebuilt at most once per
+ * tick (and only when it is used). Grids are kept per world with weak references
+ * so unloaded worlds are forgotten even if CACHE is not registered on the Forge
+ * event bus. Registering it only makes that happen a bit sooner
+ */
+public class PlayerCache {
+
+    public static final PlayerCache CACHE = new PlayerCache();
+
+    private final Map<World, PlayerGrid> grids = new WeakHashMap<>();
+
+    public void clean() {
+        grids.clear();
+    }
+
+    public void clean(int dimension) {
+        grids.keySet().removeIf(world -> world.provider.getDimension() == dimension);
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        World world = event.getWorld();
+        if (!world.isRemote) {
+            grids.remove(world);
+        }
+    }
+
+    /**
+     * Get the closest non spectating player within range of the entity. This is the
+     * same as World.getClosestPlayerToEntity()
+     */
+    @Nullable
+    public EntityPlayer getClosestPlayer(@Nonnull World world, @Nullable Entity entity, double range) {
+        if (entity == null) {
+            return null;
+        }
+        if (range < 0 || world.isRemote) {
+            // No limit (the grid doesn't help here) or a client world (only server worlds are cached)
+            return world.getClosestPlayerToEntity(entity, range);
+        }
+        PlayerGrid grid = grids.computeIfAbsent(world, w -> new PlayerGrid());
+        return grid.getClosestPlayer(world, entity.posX, entity.posY, entity.posZ, range);
+    }
+}
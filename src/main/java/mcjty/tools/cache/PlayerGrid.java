@@ -0,0 +1,80 @@
+package mcjty.tools.cache;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.EntitySelectors;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All (non spectating) players of a world sorted in a grid of square cells.
+ * The grid is a snapshot that is rebuilt at most once per tick. The grid doesn't
+ * keep the world or its players alive (players refer to their world)
+ */
+class PlayerGrid {
+
+    // Cells are 128x128 blocks
+    private static final int CELL_SHIFT = 7;
+
+    private final Map<Long, List<WeakReference<EntityPlayer>>> cells = new HashMap<>();
+    private long time = Long.MIN_VALUE;
+
+    private void update(World world) {
+        long now = world.getTotalWorldTime();
+        if (now == time) {
+            return;
+        }
+        time = now;
+        cells.clear();
+        for (EntityPlayer player : world.playerEntities) {
+            if (EntitySelectors.NOT_SPECTATING.apply(player)) {
+                long cell = ChunkPos.asLong(MathHelper.floor(player.posX) >> CELL_SHIFT, MathHelper.floor(player.posZ) >> CELL_SHIFT);
+                cells.computeIfAbsent(cell, c -> new ArrayList<>()).add(new WeakReference<>(player));
+            }
+        }
+    }
+
+    /**
+     * Same result as World.getClosestPlayer(x, y, z, range, false) for a positive range
+     */
+    @Nullable
+    public EntityPlayer getClosestPlayer(World world, double x, double y, double z, double range) {
+        update(world);
+        if (cells.isEmpty()) {
+            return null;
+        }
+        int minX = MathHelper.floor(x - range) >> CELL_SHIFT;
+        int maxX = MathHelper.floor(x + range) >> CELL_SHIFT;
+        int minZ = MathHelper.floor(z - range) >> CELL_SHIFT;
+        int maxZ = MathHelper.floor(z + range) >> CELL_SHIFT;
+        double rangeSq = range * range;
+        double closestSq = -1;
+        EntityPlayer closest = null;
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                List<WeakReference<EntityPlayer>> players = cells.get(ChunkPos.asLong(cx, cz));
+                if (players != null) {
+                    for (WeakReference<EntityPlayer> reference : players) {
+                        EntityPlayer player = reference.get();
+                        if (player == null) {
+                            continue;
+                        }
+                        double distSq = player.getDistanceSq(x, y, z);
+                        if (distSq < rangeSq && (closestSq == -1 || distSq < closestSq)) {
+                            closestSq = distSq;
+                            closest = player;
+                        }
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+}
@@ -1,73 +1,336 @@
 package mcjty.tools.cache;
 
-import net.minecraft.nbt.NBTBase;
-import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraft.world.gen.structure.MapGenStructureData;
+import net.minecraftforge.event.terraingen.PopulateChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.io.File;
+import java.util.*;
 
 /**
- * Remember where structures are
+ * Remember where structures are. Queries are answered against the bounding
+ * boxes of all structure components. The amount of remembered chunks is limited
+ * per structure and per dimension and so is the amount of indexed boxes per
+ * dimension (least recently used structures are dropped first). Register CACHE on the Forge event bus to
+ * automatically forget about dimensions when they unload and to pick up new
+ * structures as soon as chunks are generated. This is also needed for the
+ * optional preloading of structure data when a world loads.
+ *
+ * Optionally the parsed index is persisted in a memory mapped file next to the
+ * structure data so that it doesn't have to be rebuilt after a restart
  */
 public class StructureCache {
 
     public static final StructureCache CACHE = new StructureCache();
 
-    private final Map<StructureCacheEntry, Boolean> structureCache = new HashMap<>();
+    // Rough estimate of the memory used by a single cached chunk result
+    public static final int BYTES_PER_ENTRY = 64;
+    // Rough estimate of the memory used by a single indexed structure bounding box
+    public static final int BYTES_PER_BOX = 40;
+
+    public static final List<String> VANILLA_STRUCTURES = Collections.unmodifiableList(Arrays.asList(
+            "Village", "Fortress", "Mineshaft", "Temple", "Stronghold", "Monument", "Mansion"));
+
+    private final Map<Integer, DimensionStructureCache> dimensions = new HashMap<>();
+
+    private final StructurePreloader preloader = new StructurePreloader();
+    private boolean preload = false;
+    private final Set<String> preloadStructures = new LinkedHashSet<>(VANILLA_STRUCTURES);
+    private boolean persistIndex = false;
+
+    // Amount of ticks before we look again for structure data that was missing
+    private long missingDataRecheckInterval = 1200;
+
+    // Amount of ticks before we check the structure data again for newly generated structures
+    private long refreshInterval = 200;
+
+    private int maxEntriesPerStructure = 10000;
+    private int maxEntriesPerDimension = 40000;
+    private int maxBoxesPerDimension = 250000;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
 
     public void clean() {
-        structureCache.clear();
+        dimensions.clear();
+        preloader.cancelAll();
+    }
+
+    public void clean(int dimension) {
+        dimensions.remove(dimension);
+        preloader.cancel(dimension);
+    }
+
+    @SubscribeEvent
+    public void onWorldLoad(WorldEvent.Load event) {
+        World world = event.getWorld();
+        if (preload && !world.isRemote && world instanceof WorldServer && !preloadStructures.isEmpty()) {
+            preloader.start((WorldServer) world, preloadStructures, persistIndex);
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        World world = event.getWorld();
+        if (!world.isRemote) {
+            clean(world.provider.getDimension());
+        }
+    }
+
+    @SubscribeEvent
+    public void onChunkPopulated(PopulateChunkEvent.Post event) {
+        World world = event.getWorld();
+        if (!world.isRemote) {
+            DimensionStructureCache cache = dimensions.get(world.provider.getDimension());
+            if (cache != null) {
+                cache.setLastGenerated(world.getTotalWorldTime());
+            }
+        }
+    }
+
+    /**
+     * Set the amount of ticks before structure data that could not be found is looked
+     * up again. A negative value means that missing data is never looked up again
+     * (until the cache is cleaned)
+     */
+    public void setMissingDataRecheckInterval(long ticks) {
+        missingDataRecheckInterval = ticks;
+    }
+
+    public long getMissingDataRecheckInterval() {
+        return missingDataRecheckInterval;
+    }
+
+    /**
+     * If enabled the structure data of the configured structures is read and parsed on a
+     * background thread as soon as a world loads. Until that is finished queries are
+     * answered the normal way
+     */
+    public void setPreload(boolean preload) {
+        this.preload = preload;
+    }
+
+    public boolean isPreload() {
+        return preload;
+    }
+
+    public void setPreloadStructures(Collection<String> structures) {
+        preloadStructures.clear();
+        preloadStructures.addAll(structures);
+    }
+
+    public Set<String> getPreloadStructures() {
+        return Collections.unmodifiableSet(preloadStructures);
+    }
+
+    /**
+     * If enabled the index of every structure is saved in the data folder of the world.
+     * It is rebuilt only when the size or modification time of the structure data changes
+     */
+    public void setPersistIndex(boolean persistIndex) {
+        this.persistIndex = persistIndex;
+    }
+
+    public boolean isPersistIndex() {
+        return persistIndex;
+    }
+
+    /**
+     * Set the amount of ticks before already parsed structure data is checked again for
+     * newly generated structures. A negative value means that this only happens when
+     * new chunks are generated (which requires CACHE to be registered on the event bus)
+     */
+    public void setRefreshInterval(long ticks) {
+        refreshInterval = ticks;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setMaxEntriesPerStructure(int max) {
+        maxEntriesPerStructure = Math.max(1, max);
+    }
+
+    public int getMaxEntriesPerStructure() {
+        return maxEntriesPerStructure;
+    }
+
+    public void setMaxEntriesPerDimension(int max) {
+        maxEntriesPerDimension = Math.max(1, max);
+    }
+
+    public int getMaxEntriesPerDimension() {
+        return maxEntriesPerDimension;
+    }
+
+    /**
+     * Set the maximum amount of structure boxes that are kept on the heap per dimension.
+     * If this is exceeded the indices of the least recently used structures are dropped
+     * and parsed again when they are needed
+     */
+    public void setMaxBoxesPerDimension(int max) {
+        maxBoxesPerDimension = Math.max(1, max);
+    }
+
+    public int getMaxBoxesPerDimension() {
+        return maxBoxesPerDimension;
+    }
+
+    public int getEntryCount() {
+        int count = 0;
+        for (DimensionStructureCache cache : dimensions.values()) {
+            count += cache.getEntryCount();
+        }
+        return count;
+    }
+
+    public int getIndexedBoxCount() {
+        int count = 0;
+        for (DimensionStructureCache cache : dimensions.values()) {
+            count += cache.getIndexedBoxCount();
+        }
+        return count;
+    }
+
+    public long getEstimatedBytes() {
+        return (long) getEntryCount() * BYTES_PER_ENTRY + (long) getIndexedBoxCount() * BYTES_PER_BOX;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
     }
 
+    /**
+     * Test if the given position is inside one of the components of the given structure
+     */
     public boolean isInStructure(World world, String structure, BlockPos pos) {
         int dimension = world.provider.getDimension();
-        ChunkPos cp = new ChunkPos(pos);
-        long cplong = ChunkPos.asLong(cp.x, cp.z);
-        StructureCacheEntry entry = new StructureCacheEntry(structure, dimension, cplong);
-        if (structureCache.containsKey(entry)) {
-            return structureCache.get(entry);
+        long time = world.getTotalWorldTime();
+        int chunkX = pos.getX() >> 4;
+        int chunkZ = pos.getZ() >> 4;
+        long cplong = ChunkPos.asLong(chunkX, chunkZ);
+        DimensionStructureCache cache = dimensions.computeIfAbsent(dimension, d -> new DimensionStructureCache());
+
+        StructureIndex index = cache.getIndex(structure);
+        if (index != null && isRefreshDue(cache, structure, index, time)) {
+            index = refresh(world, cache, structure, index, time);
         }
 
-        MapGenStructureData data = (MapGenStructureData) world.getPerWorldStorage().getOrLoadData(MapGenStructureData.class, structure);
-        if (data == null) {
-            return false;
+        if (index == null) {
+            index = preloader.take(dimension, structure);
+            if (index != null) {
+                evictions += cache.setIndex(structure, index, time, maxBoxesPerDimension);
+            }
         }
 
-        Set<Long> longs = parseStructureData(data);
-        for (Long l : longs) {
-            structureCache.put(new StructureCacheEntry(structure, dimension, l), true);
+        if (index == null) {
+            if (isKnownMissing(world, cache, structure)) {
+                misses++;
+                return false;
+            }
+
+            MapGenStructureData data = (MapGenStructureData) world.getPerWorldStorage().getOrLoadData(MapGenStructureData.class, structure);
+            if (data == null) {
+                misses++;
+                cache.setMissing(structure, time);
+                return false;
+            }
+            index = createIndex(world, data);
+            evictions += cache.setIndex(structure, index, time, maxBoxesPerDimension);
+            preloader.discard(dimension, structure);
         }
-        if (structureCache.containsKey(entry)) {
-            return true;
+
+        int[] boxes = cache.get(structure, cplong);
+        if (boxes != null) {
+            hits++;
         } else {
-            structureCache.put(entry, false);
-            return false;
+            misses++;
+            boxes = index.getBoxesInChunk(chunkX, chunkZ);
+            evictions += cache.put(structure, cplong, boxes, maxEntriesPerStructure, maxEntriesPerDimension);
         }
+        return boxes.length > 0 && index.isInside(boxes, pos);
     }
 
-    private static Set<Long> parseStructureData(MapGenStructureData data) {
-        Set<Long> chunks = new HashSet<>();
-        NBTTagCompound nbttagcompound = data.getTagCompound();
-
-        for (String s : nbttagcompound.getKeySet()) {
-            NBTBase nbtbase = nbttagcompound.getTag(s);
+    private StructureIndex createIndex(World world, MapGenStructureData data) {
+        if (persistIndex && world instanceof WorldServer) {
+            File dataDir = new File(((WorldServer) world).getChunkSaveLocation(), "data");
+            return StructureIndex.createPersisted(data, false, dataDir);
+        }
+        return StructureIndex.create(data);
+    }
 
-            if (nbtbase.getId() == 10) {
-                NBTTagCompound nbttagcompound1 = (NBTTagCompound) nbtbase;
+    private boolean isRefreshDue(DimensionStructureCache cache, String structure, StructureIndex index, long time) {
+        long last = cache.getLastRefresh(structure);
+        if (cache.getLastGenerated() >= last) {
+            return true;
+        }
+        // A preloaded index can only get new structures if new chunks are generated
+        if (refreshInterval < 0 || index.isDetached()) {
+            return false;
+        }
+        long age = time - last;
+        return age < 0 || age >= refreshInterval;
+    }
 
-                if (nbttagcompound1.hasKey("ChunkX") && nbttagcompound1.hasKey("ChunkZ")) {
-                    int i = nbttagcompound1.getInteger("ChunkX");
-                    int j = nbttagcompound1.getInteger("ChunkZ");
-                    chunks.add(ChunkPos.asLong(i, j));
-                }
+    private StructureIndex refresh(World world, DimensionStructureCache cache, String structure, StructureIndex index, long time) {
+        if (index.isDetached()) {
+            MapGenStructureData data = (MapGenStructureData) world.getPerWorldStorage().getOrLoadData(MapGenStructureData.class, structure);
+            if (data != null) {
+                index = index.rebind(data);
             }
         }
-        return chunks;
+        if (!index.isOutdated()) {
+            evictions += cache.setIndex(structure, index, time, maxBoxesPerDimension);
+            return index;
+        }
+        Set<Long> touched = new HashSet<>();
+        StructureIndex refreshed = index.refresh(touched);
+        for (Long chunkpos : touched) {
+            cache.remove(structure, chunkpos);
+        }
+        evictions += cache.setIndex(structure, refreshed, time, maxBoxesPerDimension);
+        return refreshed;
+    }
+
+    private boolean isKnownMissing(World world, DimensionStructureCache cache, String structure) {
+        Long since = cache.getMissingSince(structure);
+        if (since == null) {
+            return false;
+        }
+        if (missingDataRecheckInterval < 0) {
+            return true;
+        }
+        long age = world.getTotalWorldTime() - since;
+        if (age >= 0 && age < missingDataRecheckInterval) {
+            return true;
+        }
+        cache.clearMissing(structure);
+        return false;
     }
 }
@@ -0,0 +1,319 @@
+package mcjty.tools.cache;
+
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.gen.structure.MapGenStructureData;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.*;
+
+/**
+ * Spatial index of all structure bounding boxes parsed from a
+ * MapGenStructureData. Every structure contributes the boxes of its components
+ * (or its global box if it has no components). Boxes are stored as flat int
+ * arrays and are bucketed in a grid of regions of 8x8 chunks.
+ *
+ * The NBT keys that were already parsed are remembered so that a refresh only has
+ * to look at structures that were generated after the previous parse. A refresh
+ * appends the new boxes in place (the arrays grow as needed) so box indices that
+ * were handed out before stay valid. An index is built by one thread and after
+ * that only used (and refreshed) by the server thread.
+ *
+ * An index that was preloaded in the background is detached: it was made from a
+ * private copy of the structure data instead of the instance that lives in the
+ * world storage. Such an index has to be rebound before it can be refreshed.
+ *
+ * An index can be layered on top of a memory mapped index that was saved by
+ * a previous session. In that case only the structures that are not in the mapped
+ * index are kept on the heap. Box ids of the mapped index are stored as negative
+ * numbers (-1 - id)
+ */
+class StructureIndex {
+
+    public static final int[] EMPTY = new int[0];
+
+    private static final int REGION_SHIFT = 3;
+
+    @Nonnull private MapGenStructureData data;
+    // All keys that were handled: the parsed ones and the ones found in the mapped base
+    @Nonnull private final Set<String> parsedKeys = new HashSet<>();
+    // How many of the parsed keys were found in the mapped base
+    private int baseKeys = 0;
+    // minX, minY, minZ, maxX, maxY, maxZ for every box
+    @Nonnull private int[] boxes = EMPTY;
+    private int boxCount = 0;
+    // Region pos -> indices of the boxes intersecting that region
+    @Nonnull private final Map<Long, int[]> regions = new HashMap<>();
+    private boolean detached;
+    @Nullable private final MappedStructureIndex base;
+
+    private StructureIndex(@Nonnull MapGenStructureData data, boolean detached, @Nullable MappedStructureIndex base) {
+        this.data = data;
+        this.detached = detached;
+        this.base = base;
+    }
+
+    @Nonnull
+    public static StructureIndex create(@Nonnull MapGenStructureData data) {
+        return create(data, false);
+    }
+
+    @Nonnull
+    public static StructureIndex create(@Nonnull MapGenStructureData data, boolean detached) {
+        return create(data, detached, null);
+    }
+
+    @Nonnull
+    private static StructureIndex create(@Nonnull MapGenStructureData data, boolean detached, @Nullable MappedStructureIndex base) {
+        StructureIndex index = new StructureIndex(data, detached, base);
+        return index.refresh(new HashSet<>());
+    }
+
+    /**
+     * Create an index using the index file in the given data directory if it is still
+     * valid for the structure data file. Otherwise the structure data is parsed and
+     * a new index file is written
+     */
+    @Nonnull
+    public static StructureIndex createPersisted(@Nonnull MapGenStructureData data, boolean detached, @Nonnull File dataDir) {
+        MappedStructureIndex mapped = MappedStructureIndex.load(dataDir, data.mapName);
+        if (mapped != null) {
+            return create(data, detached, mapped);
+        }
+        StructureIndex index = create(data, detached, null);
+        long[] keys = index.getParsedKeysAsChunks();
+        if (keys != null) {
+            MappedStructureIndex.write(dataDir, data.mapName, keys, index.boxes, index.boxCount);
+        }
+        return index;
+    }
+
+    /**
+     * Convert all parsed keys to chunk positions. Returns null if a key is not in the
+     * format used by MapGenStructureData
+     */
+    @Nullable
+    private long[] getParsedKeysAsChunks() {
+        long[] result = new long[parsedKeys.size()];
+        int i = 0;
+        for (String key : parsedKeys) {
+            Long chunkpos = parseKey(key);
+            if (chunkpos == null) {
+                return null;
+            }
+            result[i++] = chunkpos;
+        }
+        return result;
+    }
+
+    // Keys in MapGenStructureData are formatted as '[x,z]'
+    @Nullable
+    private static Long parseKey(String key) {
+        int comma = key.indexOf(',');
+        if (key.length() < 5 || key.charAt(0) != '[' || key.charAt(key.length() - 1) != ']' || comma < 0) {
+            return null;
+        }
+        try {
+            int x = Integer.parseInt(key.substring(1, comma));
+            int z = Integer.parseInt(key.substring(comma + 1, key.length() - 1));
+            return ChunkPos.asLong(x, z);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean isInBase(String key) {
+        if (base == null) {
+            return false;
+        }
+        Long chunkpos = parseKey(key);
+        return chunkpos != null && base.containsKey(chunkpos);
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    /**
+     * Bind this index to the structure data that lives in the world storage.
+     * Structures that were added to that data since this index was made will be
+     * picked up by the next refresh
+     */
+    @Nonnull
+    public StructureIndex rebind(@Nonnull MapGenStructureData live) {
+        data = live;
+        detached = false;
+        return this;
+    }
+
+    /**
+     * Return true if the structure data contains entries that are not in this index yet.
+     * Structure data only grows so comparing the size is enough
+     */
+    public boolean isOutdated() {
+        int parsed = parsedKeys.size() + (base == null ? 0 : base.getKeyCount() - baseKeys);
+        return data.getTagCompound().getSize() != parsed;
+    }
+
+    /**
+     * Add all structures that were added to the structure data since the last refresh
+     * to this index. All chunks that are touched by the new structures are added
+     * to 'touched'. Returns this index
+     */
+    @Nonnull
+    public StructureIndex refresh(@Nonnull Set<Long> touched) {
+        if (!isOutdated()) {
+            return this;
+        }
+        List<int[]> newBoxes = new ArrayList<>();
+        NBTTagCompound nbttagcompound = data.getTagCompound();
+        for (String s : nbttagcompound.getKeySet()) {
+            if (parsedKeys.add(s)) {
+                // Keys of the mapped base are only checked once, after that they are in parsedKeys
+                if (isInBase(s)) {
+                    baseKeys++;
+                    continue;
+                }
+                NBTBase nbtbase = nbttagcompound.getTag(s);
+                if (nbtbase.getId() == Constants.NBT.TAG_COMPOUND) {
+                    parseStart((NBTTagCompound) nbtbase, newBoxes);
+                }
+            }
+        }
+        if (newBoxes.isEmpty()) {
+            return this;
+        }
+
+        int needed = (boxCount + newBoxes.size()) * 6;
+        if (needed > boxes.length) {
+            boxes = Arrays.copyOf(boxes, Math.max(needed, boxes.length * 2));
+        }
+        Map<Long, List<Integer>> additions = new HashMap<>();
+        for (int[] box : newBoxes) {
+            int idx = boxCount++;
+            System.arraycopy(box, 0, boxes, idx * 6, 6);
+            int minCx = box[0] >> 4;
+            int minCz = box[2] >> 4;
+            int maxCx = box[3] >> 4;
+            int maxCz = box[5] >> 4;
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                for (int cz = minCz; cz <= maxCz; cz++) {
+                    touched.add(ChunkPos.asLong(cx, cz));
+                }
+            }
+            for (int rx = minCx >> REGION_SHIFT; rx <= maxCx >> REGION_SHIFT; rx++) {
+                for (int rz = minCz >> REGION_SHIFT; rz <= maxCz >> REGION_SHIFT; rz++) {
+                    additions.computeIfAbsent(ChunkPos.asLong(rx, rz), r -> new ArrayList<>()).add(idx);
+                }
+            }
+        }
+
+        // Only the regions that got new boxes are changed
+        for (Map.Entry<Long, List<Integer>> entry : additions.entrySet()) {
+            int[] old = regions.getOrDefault(entry.getKey(), EMPTY);
+            int[] ids = Arrays.copyOf(old, old.length + entry.getValue().size());
+            int i = old.length;
+            for (Integer id : entry.getValue()) {
+                ids[i++] = id;
+            }
+            regions.put(entry.getKey(), ids);
+        }
+        return this;
+    }
+
+    private static void parseStart(NBTTagCompound start, List<int[]> result) {
+        // Invalid structure starts have no bounding box and are ignored
+        int[] bb = start.getIntArray("BB");
+        if (bb.length != 6) {
+            return;
+        }
+        boolean hasChildren = false;
+        NBTTagList children = start.getTagList("Children", Constants.NBT.TAG_COMPOUND);
+        for (int i = 0; i < children.tagCount(); i++) {
+            int[] childbb = children.getCompoundTagAt(i).getIntArray("BB");
+            if (childbb.length == 6) {
+                result.add(childbb);
+                hasChildren = true;
+            }
+        }
+        if (!hasChildren) {
+            result.add(bb);
+        }
+    }
+
+    /**
+     * Get the indices of all boxes that intersect the given chunk
+     */
+    @Nonnull
+    public int[] getBoxesInChunk(int chunkX, int chunkZ) {
+        int[] result = getHeapBoxesInChunk(chunkX, chunkZ);
+        if (base == null) {
+            return result;
+        }
+        int[] mapped = base.getBoxesInChunk(chunkX, chunkZ);
+        if (mapped.length == 0) {
+            return result;
+        }
+        int[] combined = Arrays.copyOf(result, result.length + mapped.length);
+        for (int i = 0; i < mapped.length; i++) {
+            combined[result.length + i] = -1 - mapped[i];
+        }
+        return combined;
+    }
+
+    @Nonnull
+    private int[] getHeapBoxesInChunk(int chunkX, int chunkZ) {
+        int[] candidates = regions.get(ChunkPos.asLong(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT));
+        if (candidates == null) {
+            return EMPTY;
+        }
+        int minX = chunkX << 4;
+        int minZ = chunkZ << 4;
+        int maxX = minX + 15;
+        int maxZ = minZ + 15;
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for (int id : candidates) {
+            int b = id * 6;
+            if (boxes[b] <= maxX && boxes[b + 3] >= minX && boxes[b + 2] <= maxZ && boxes[b + 5] >= minZ) {
+                result[count++] = id;
+            }
+        }
+        return count == 0 ? EMPTY : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Test if the position is inside one of the given boxes
+     */
+    public boolean isInside(@Nonnull int[] ids, @Nonnull BlockPos pos) {
+        int x = pos.getX();
+        int y = pos.getY();
+        int z = pos.getZ();
+        for (int id : ids) {
+            if (id < 0) {
+                if (base.isInside(-1 - id, x, y, z)) {
+                    return true;
+                }
+                continue;
+            }
+            int b = id * 6;
+            if (x >= boxes[b] && y >= boxes[b + 1] && z >= boxes[b + 2] && x <= boxes[b + 3] && y <= boxes[b + 4] && z <= boxes[b + 5]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Amount of boxes on the heap. Boxes in a memory mapped index are not counted
+     */
+    public int getBoxCount() {
+        return boxCount;
+    }
+}
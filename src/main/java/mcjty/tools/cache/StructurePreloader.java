@@ -0,0 +1,134 @@
+package mcjty.tools.cache;
+
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.gen.structure.MapGenStructureData;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads and parses structure data on a background thread. The structure files
+ * are read directly from disk into private copies of MapGenStructureData so that
+ * the (not thread safe) world storage is never touched from the background thread.
+ * All structures of a dimension are published together once they are parsed
+ */
+class StructurePreloader {
+
+    private ExecutorService executor = null;
+
+    // Dimension -> token of the preload that is currently running for it
+    private final Map<Integer, Object> pending = new ConcurrentHashMap<>();
+
+    // Dimension -> (structure name -> detached index)
+    private final Map<Integer, Map<String, StructureIndex>> preloaded = new ConcurrentHashMap<>();
+
+    // Dimension -> structures that were indexed the normal way while the preload was running
+    private final Map<Integer, Set<String>> discarded = new ConcurrentHashMap<>();
+
+    public synchronized void start(WorldServer world, Collection<String> structures, boolean persist) {
+        int dimension = world.provider.getDimension();
+        File dataDir = new File(world.getChunkSaveLocation(), "data");
+        List<String> names = new ArrayList<>(structures);
+        Object token = new Object();
+        pending.put(dimension, token);
+        preloaded.remove(dimension);
+        Set<String> skip = ConcurrentHashMap.newKeySet();
+        discarded.put(dimension, skip);
+        getExecutor().submit(() -> {
+            Map<String, StructureIndex> indices = new HashMap<>();
+            for (String structure : names) {
+                if (skip.contains(structure)) {
+                    continue;
+                }
+                MapGenStructureData data = read(dataDir, structure);
+                if (data != null) {
+                    indices.put(structure, persist ? StructureIndex.createPersisted(data, true, dataDir) : StructureIndex.create(data, true));
+                }
+            }
+            // Only publish if the dimension wasn't unloaded or loaded again in the mean time
+            synchronized (this) {
+                if (pending.remove(dimension, token)) {
+                    discarded.remove(dimension, skip);
+                    indices.keySet().removeAll(skip);
+                    if (!indices.isEmpty()) {
+                        preloaded.put(dimension, new ConcurrentHashMap<>(indices));
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized void cancel(int dimension) {
+        pending.remove(dimension);
+        preloaded.remove(dimension);
+        discarded.remove(dimension);
+    }
+
+    public synchronized void cancelAll() {
+        pending.clear();
+        preloaded.clear();
+        discarded.clear();
+    }
+
+    /**
+     * Forget about the preloaded index of a structure because it was already indexed
+     * the normal way. If the preload is still running it will not be published
+     */
+    public synchronized void discard(int dimension, String structure) {
+        Set<String> skip = discarded.get(dimension);
+        if (skip != null) {
+            skip.add(structure);
+        }
+        take(dimension, structure);
+    }
+
+    /**
+     * Get the preloaded index for a structure if it is ready. Every index is only handed out once
+     */
+    public StructureIndex take(int dimension, String structure) {
+        Map<String, StructureIndex> indices = preloaded.get(dimension);
+        if (indices == null) {
+            return null;
+        }
+        StructureIndex index = indices.remove(structure);
+        if (indices.isEmpty()) {
+            preloaded.remove(dimension, indices);
+        }
+        return index;
+    }
+
+    private static MapGenStructureData read(File dataDir, String structure) {
+        File file = new File(dataDir, structure + ".dat");
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream stream = new FileInputStream(file)) {
+            NBTTagCompound tag = CompressedStreamTools.readCompressed(stream);
+            MapGenStructureData data = new MapGenStructureData(structure);
+            data.readFromNBT(tag.getCompoundTag("data"));
+            return data;
+        } catch (IOException e) {
+            // The structure will be loaded the normal way
+            return null;
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "McJtyTools structure preloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
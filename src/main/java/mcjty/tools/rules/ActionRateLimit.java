@@ -0,0 +1,84 @@
+package mcjty.tools.rules;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Limits how often the actions of a rule can fire per chunk: at most 'amount'
+ * times in every window of 'ticks' ticks. One limit is shared by all limited
+ * actions of a rule
+ */
+class ActionRateLimit {
+
+    // At most this many chunks are remembered per dimension. The least recently used one is forgotten first
+    private static final int MAX_WINDOWS = 1024;
+
+    private final int amount;
+    private final int ticks;
+
+    // Dimension -> (chunk -> [window start, count])
+    private final Map<Integer, Map<Long, long[]>> windows = new HashMap<>();
+
+    private ActionRateLimit(int amount, int ticks) {
+        this.amount = amount;
+        this.ticks = ticks;
+    }
+
+    /**
+     * Parse an 'amount,ticks' specification
+     */
+    @Nullable
+    public static ActionRateLimit parse(String spec, Logger logger) {
+        String[] split = StringUtils.split(spec, ',');
+        try {
+            int amount = Integer.parseInt(split[0].trim());
+            int ticks = Integer.parseInt(split[1].trim());
+            if (amount >= 0 && ticks > 0) {
+                return new ActionRateLimit(amount, ticks);
+            }
+        } catch (Exception ignore) {
+        }
+        logger.log(Level.ERROR, "Bad amount,ticks rate limit '" + spec + "'!");
+        return null;
+    }
+
+    /**
+     * Returns true if the action may fire at this position (and counts it)
+     */
+    public boolean tryAcquire(World world, BlockPos pos) {
+        long now = world.getTotalWorldTime();
+        Map<Long, long[]> chunks = windows.computeIfAbsent(world.provider.getDimension(), d -> createWindows());
+        long chunk = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+        long[] window = chunks.get(chunk);
+        if (window == null) {
+            window = new long[] { now, 0 };
+            chunks.put(chunk, window);
+        } else if (now - window[0] >= ticks || now < window[0]) {
+            window[0] = now;
+            window[1] = 0;
+        }
+        if (window[1] >= amount) {
+            return false;
+        }
+        window[1]++;
+        return true;
+    }
+
+    private static Map<Long, long[]> createWindows() {
+        return new LinkedHashMap<Long, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > MAX_WINDOWS;
+            }
+        };
+    }
+}
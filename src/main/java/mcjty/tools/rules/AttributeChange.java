@@ -0,0 +1,99 @@
+package mcjty.tools.rules;
+
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.SharedMonsterAttributes;
+import net.minecraft.entity.ai.attributes.AttributeModifier;
+import net.minecraft.entity.ai.attributes.IAttribute;
+import net.minecraft.entity.ai.attributes.IAttributeInstance;
+
+import java.util.UUID;
+
+/**
+ * Changes an attribute of a mob to 'value * multiply + add' using attribute
+ * modifiers with a fixed UUID (one for the multiplication, one for the addition).
+ * A mob that already has one of these modifiers is left alone so the change is
+ * only done once. Mobs changed by older versions (which changed the base value
+ * directly) are recognized by their tag.
+ *
+ * The modifiers are (value + add/multiply) * multiply. A multiplier of 0 can't
+ * be expressed like that so in that case the base value is set directly
+ */
+class AttributeChange {
+
+    public static final UUID HEALTH_MULTIPLY = UUID.fromString("9f6b3f4e-2f0c-4c39-9a5e-3c1d2a6e7b01");
+    public static final UUID HEALTH_ADD = UUID.fromString("9f6b3f4e-2f0c-4c39-9a5e-3c1d2a6e7b02");
+    public static final UUID SPEED_MULTIPLY = UUID.fromString("9f6b3f4e-2f0c-4c39-9a5e-3c1d2a6e7b03");
+    public static final UUID SPEED_ADD = UUID.fromString("9f6b3f4e-2f0c-4c39-9a5e-3c1d2a6e7b04");
+    public static final UUID DAMAGE_MULTIPLY = UUID.fromString("9f6b3f4e-2f0c-4c39-9a5e-3c1d2a6e7b05");
+    public static final UUID DAMAGE_ADD = UUID.fromString("9f6b3f4e-2f0c-4c39-9a5e-3c1d2a6e7b06");
+
+    private final IAttribute attribute;
+    private final String legacyTag;
+    private final UUID multiplyId;
+    private final UUID addId;
+    private final float multiply;
+    private final float add;
+    private final AttributeModifier multiplyModifier;
+    private final AttributeModifier addModifier;
+
+    private AttributeChange(IAttribute attribute, String legacyTag, UUID multiplyId, UUID addId, float multiply, float add) {
+        this.attribute = attribute;
+        this.legacyTag = legacyTag;
+        this.multiplyId = multiplyId;
+        this.addId = addId;
+        this.multiply = multiply;
+        this.add = add;
+        if (multiply != 0) {
+            multiplyModifier = multiply == 1 ? null : new AttributeModifier(multiplyId, "McJtyTools " + legacyTag + " multiply", multiply - 1, 1);
+            addModifier = add == 0 ? null : new AttributeModifier(addId, "McJtyTools " + legacyTag + " add", add / multiply, 0);
+        } else {
+            multiplyModifier = null;
+            addModifier = null;
+        }
+    }
+
+    public static AttributeChange health(float multiply, float add) {
+        return new AttributeChange(SharedMonsterAttributes.MAX_HEALTH, "ctrlHealth", HEALTH_MULTIPLY, HEALTH_ADD, multiply, add);
+    }
+
+    public static AttributeChange speed(float multiply, float add) {
+        return new AttributeChange(SharedMonsterAttributes.MOVEMENT_SPEED, "ctrlSpeed", SPEED_MULTIPLY, SPEED_ADD, multiply, add);
+    }
+
+    public static AttributeChange damage(float multiply, float add) {
+        return new AttributeChange(SharedMonsterAttributes.ATTACK_DAMAGE, "ctrlDamage", DAMAGE_MULTIPLY, DAMAGE_ADD, multiply, add);
+    }
+
+    public void apply(EntityLivingBase living) {
+        if (multiply != 0 && multiplyModifier == null && addModifier == null) {
+            // 'value * 1 + 0' changes nothing (and should not heal the mob)
+            return;
+        }
+        IAttributeInstance instance = living.getEntityAttribute(attribute);
+        if (instance == null) {
+            return;
+        }
+        if (instance.getModifier(multiplyId) != null || instance.getModifier(addId) != null) {
+            return;
+        }
+        if (living.getTags().contains(legacyTag)) {
+            return;
+        }
+
+        if (multiply == 0) {
+            // Legacy behaviour: change the base value and remember that with a tag
+            instance.setBaseValue(add);
+            living.addTag(legacyTag);
+        } else {
+            if (multiplyModifier != null) {
+                instance.applyModifier(multiplyModifier);
+            }
+            if (addModifier != null) {
+                instance.applyModifier(addModifier);
+            }
+        }
+        if (attribute == SharedMonsterAttributes.MAX_HEALTH) {
+            living.setHealth(living.getMaxHealth());
+        }
+    }
+}
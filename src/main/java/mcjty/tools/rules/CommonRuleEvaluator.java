@@ -4,10 +4,11 @@ import com.google.common.base.Optional;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import mcjty.tools.cache.StructureCache;
 import mcjty.tools.typed.AttributeMap;
+import mcjty.tools.typed.IntList;
 import mcjty.tools.typed.Key;
+import mcjty.tools.varia.JSonTools;
 import mcjty.tools.varia.LookAtTools;
 import mcjty.tools.varia.Tools;
 import net.minecraft.block.Block;
@@ -289,12 +290,12 @@ public class CommonRuleEvaluator {
     private static Random rnd = new Random();
 
     private void addRandomCheck(AttributeMap map) {
-        final float r = map.get(RANDOM);
+        final float r = map.getFloat(RANDOM);
         checks.add((event,query) -> rnd.nextFloat() < r);
     }
 
     private void addSeeSkyCheck(AttributeMap map) {
-        if (map.get(SEESKY)) {
+        if (map.getBoolean(SEESKY)) {
             checks.add((event,query) -> query.getWorld(event).canBlockSeeSky(query.getPos(event)));
         } else {
             checks.add((event,query) -> !query.getWorld(event).canBlockSeeSky(query.getPos(event)));
@@ -302,13 +303,21 @@ public class CommonRuleEvaluator {
     }
 
     private void addDimensionCheck(AttributeMap map) {
-        List<Integer> dimensions = map.getList(DIMENSION);
+        IntList dimensions = map.getIntList(DIMENSION);
         if (dimensions.size() == 1) {
-            Integer dim = dimensions.get(0);
+            int dim = dimensions.getInt(0);
             checks.add((event,query) -> query.getWorld(event).provider.getDimension() == dim);
         } else {
-            Set<Integer> dims = new HashSet<>(dimensions);
-            checks.add((event,query) -> dims.contains(query.getWorld(event).provider.getDimension()));
+            int[] dims = dimensions.toIntArray();
+            checks.add((event,query) -> {
+                int dimension = query.getWorld(event).provider.getDimension();
+                for (int dim : dims) {
+                    if (dim == dimension) {
+                        return true;
+                    }
+                }
+                return false;
+            });
         }
     }
 
@@ -421,9 +430,7 @@ public class CommonRuleEvaluator {
     }
 
     @Nonnull
-    private BiFunction<Event, IEventQuery, BlockPos> parseOffset(String json) {
-        JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(json);
+    private BiFunction<Event, IEventQuery, BlockPos> parseOffset(JsonElement element) {
         JsonObject obj = element.getAsJsonObject();
 
         int offsetX;
@@ -456,9 +463,7 @@ public class CommonRuleEvaluator {
     }
 
     @Nullable
-    private BiPredicate<World, BlockPos> parseBlock(String json) {
-        JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(json);
+    private BiPredicate<World, BlockPos> parseBlock(JsonElement element) {
         if (element.isJsonPrimitive()) {
             String blockname = element.getAsString();
             if (blockname.startsWith("ore:")) {
@@ -539,7 +544,7 @@ public class CommonRuleEvaluator {
 
             return test;
         } else {
-            logger.log(Level.ERROR, "Block description '" + json + "' is not valid!");
+            logger.log(Level.ERROR, "Block description '" + element + "' is not valid!");
         }
         return null;
     }
@@ -580,9 +585,9 @@ public class CommonRuleEvaluator {
             posFunction = (event, query) -> query.getValidBlockPos(event);
         }
 
-        List<String> blocks = map.getList(BLOCK);
+        List<JsonElement> blocks = map.getList(BLOCK);
         if (blocks.size() == 1) {
-            String json = blocks.get(0);
+            JsonElement json = blocks.get(0);
             BiPredicate<World, BlockPos> blockMatcher = parseBlock(json);
             if (blockMatcher != null) {
                 checks.add((event, query) -> {
@@ -592,7 +597,7 @@ public class CommonRuleEvaluator {
             }
         } else {
             List<BiPredicate<World, BlockPos>> blockMatchers = new ArrayList<>();
-            for (String block : blocks) {
+            for (JsonElement block : blocks) {
                 BiPredicate<World, BlockPos> blockMatcher = parseBlock(block);
                 if (blockMatcher == null) {
                     return;
@@ -628,7 +633,7 @@ public class CommonRuleEvaluator {
 
 
     private void addMinTimeCheck(AttributeMap map) {
-        final int mintime = map.get(MINTIME);
+        final int mintime = map.getInt(MINTIME);
         checks.add((event,query) -> {
             int time = (int) query.getWorld(event).getWorldTime();
             return (time % 24000) >= mintime;
@@ -636,7 +641,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addMaxTimeCheck(AttributeMap map) {
-        final int maxtime = map.get(MAXTIME);
+        final int maxtime = map.getInt(MAXTIME);
         checks.add((event,query) -> {
             int time = (int) query.getWorld(event).getWorldTime();
             return (time % 24000) <= maxtime;
@@ -644,7 +649,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addMinSpawnDistCheck(AttributeMap map) {
-        final Float d = map.get(MINSPAWNDIST) * map.get(MINSPAWNDIST);
+        final float d = map.getFloat(MINSPAWNDIST) * map.getFloat(MINSPAWNDIST);
         checks.add((event,query) -> {
             BlockPos pos = query.getPos(event);
             double sqdist = pos.distanceSq(query.getWorld(event).getSpawnPoint());
@@ -653,7 +658,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addMaxSpawnDistCheck(AttributeMap map) {
-        final Float d = map.get(MAXSPAWNDIST) * map.get(MAXSPAWNDIST);
+        final float d = map.getFloat(MAXSPAWNDIST) * map.getFloat(MAXSPAWNDIST);
         checks.add((event,query) -> {
             BlockPos pos = query.getPos(event);
             double sqdist = pos.distanceSq(query.getWorld(event).getSpawnPoint());
@@ -663,7 +668,7 @@ public class CommonRuleEvaluator {
 
 
     private void addMinLightCheck(AttributeMap map) {
-        final int minlight = map.get(MINLIGHT);
+        final int minlight = map.getInt(MINLIGHT);
         checks.add((event,query) -> {
             BlockPos pos = query.getPos(event);
             return query.getWorld(event).getLight(pos, true) >= minlight;
@@ -671,7 +676,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addMaxLightCheck(AttributeMap map) {
-        final int maxlight = map.get(MAXLIGHT);
+        final int maxlight = map.getInt(MAXLIGHT);
         checks.add((event,query) -> {
             BlockPos pos = query.getPos(event);
             return query.getWorld(event).getLight(pos, true) <= maxlight;
@@ -679,22 +684,22 @@ public class CommonRuleEvaluator {
     }
 
     private void addMinAdditionalDifficultyCheck(AttributeMap map) {
-        final Float mindifficulty = map.get(MINDIFFICULTY);
+        final float mindifficulty = map.getFloat(MINDIFFICULTY);
         checks.add((event,query) -> query.getWorld(event).getDifficultyForLocation(query.getPos(event)).getAdditionalDifficulty() >= mindifficulty);
     }
 
     private void addMaxAdditionalDifficultyCheck(AttributeMap map) {
-        final Float maxdifficulty = map.get(MAXDIFFICULTY);
+        final float maxdifficulty = map.getFloat(MAXDIFFICULTY);
         checks.add((event,query) -> query.getWorld(event).getDifficultyForLocation(query.getPos(event)).getAdditionalDifficulty() <= maxdifficulty);
     }
 
     private void addMaxHeightCheck(AttributeMap map) {
-        final int maxheight = map.get(MAXHEIGHT);
+        final int maxheight = map.getInt(MAXHEIGHT);
         checks.add((event,query) -> query.getY(event) <= maxheight);
     }
 
     private void addMinHeightCheck(AttributeMap map) {
-        final int minheight = map.get(MINHEIGHT);
+        final int minheight = map.getInt(MINHEIGHT);
         checks.add((event,query) -> query.getY(event) >= minheight);
     }
 
@@ -913,11 +918,13 @@ public class CommonRuleEvaluator {
     }
 
 
-    public static List<Predicate<ItemStack>> getItems(List<String> itemNames, Logger logger) {
+    /**
+     * Item descriptions can be given as json text (Type.JSON) or as json elements (Type.JSON_ELEMENT)
+     */
+    public static List<Predicate<ItemStack>> getItems(List<?> itemNames, Logger logger) {
         List<Predicate<ItemStack>> items = new ArrayList<>();
-        for (String json : itemNames) {
-            JsonParser parser = new JsonParser();
-            JsonElement element = parser.parse(json);
+        for (Object value : itemNames) {
+            JsonElement element = JSonTools.toElement(value);
             if (element.isJsonPrimitive()) {
                 String name = element.getAsString();
                 Predicate<ItemStack> matcher = getMatcher(name, logger);
@@ -931,7 +938,7 @@ public class CommonRuleEvaluator {
                     items.add(matcher);
                 }
             } else {
-                logger.log(Level.ERROR, "Item description '" + json + "' is not valid!");
+                logger.log(Level.ERROR, "Item description '" + element + "' is not valid!");
             }
         }
         return items;
@@ -974,7 +981,7 @@ public class CommonRuleEvaluator {
         });
     }
 
-    public void addHeldItemCheck(AttributeMap map, Key<String> key) {
+    public void addHeldItemCheck(AttributeMap map, Key<?> key) {
         List<Predicate<ItemStack>> items = getItems(map.getList(key), logger);
         checks.add((event,query) -> {
             EntityPlayer player = query.getPlayer(event);
@@ -1069,22 +1076,22 @@ public class CommonRuleEvaluator {
     }
 
     private void addSummerCheck(AttributeMap map) {
-        Boolean s = map.get(SUMMER);
+        boolean s = map.getBoolean(SUMMER);
         checks.add((event, query) -> s == compatibility.isSummer(query.getWorld(event)));
     }
 
     private void addWinterCheck(AttributeMap map) {
-        Boolean s = map.get(WINTER);
+        boolean s = map.getBoolean(WINTER);
         checks.add((event, query) -> s == compatibility.isWinter(query.getWorld(event)));
     }
 
     private void addSpringCheck(AttributeMap map) {
-        Boolean s = map.get(SPRING);
+        boolean s = map.getBoolean(SPRING);
         checks.add((event, query) -> s == compatibility.isSpring(query.getWorld(event)));
     }
 
     private void addAutumnCheck(AttributeMap map) {
-        Boolean s = map.get(AUTUMN);
+        boolean s = map.getBoolean(AUTUMN);
         checks.add((event, query) -> s == compatibility.isAutumn(query.getWorld(event)));
     }
 
@@ -1094,7 +1101,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addInCityCheck(AttributeMap map) {
-        if (map.get(INCITY)) {
+        if (map.getBoolean(INCITY)) {
             checks.add((event,query) -> compatibility.isCity(query, event));
         } else {
             checks.add((event,query) -> !compatibility.isCity(query, event));
@@ -1102,7 +1109,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addInStreetCheck(AttributeMap map) {
-        if (map.get(INSTREET)) {
+        if (map.getBoolean(INSTREET)) {
             checks.add((event,query) -> compatibility.isStreet(query, event));
         } else {
             checks.add((event,query) -> !compatibility.isStreet(query, event));
@@ -1110,7 +1117,7 @@ public class CommonRuleEvaluator {
     }
 
     private void addInSphereCheck(AttributeMap map) {
-        if (map.get(INSPHERE)) {
+        if (map.getBoolean(INSPHERE)) {
             checks.add((event,query) -> compatibility.inSphere(query, event));
         } else {
             checks.add((event,query) -> !compatibility.inSphere(query, event));
@@ -1118,20 +1125,23 @@ public class CommonRuleEvaluator {
     }
 
     private void addInBuildingCheck(AttributeMap map) {
-        if (map.get(INBUILDING)) {
+        if (map.getBoolean(INBUILDING)) {
             checks.add((event,query) -> compatibility.isBuilding(query, event));
         } else {
             checks.add((event,query) -> !compatibility.isBuilding(query, event));
         }
     }
 
-    public void addBaubleCheck(AttributeMap map, Key<String> key, Supplier<int[]> slotSupplier) {
+    public void addBaubleCheck(AttributeMap map, Key<?> key, Supplier<int[]> slotSupplier) {
         List<Predicate<ItemStack>> items = getItems(map.getList(key), logger);
+        // The bauble slots of a type don't change so they are resolved only once
+        int[] slots = slotSupplier.get().clone();
         checks.add((event,query) -> {
             EntityPlayer player = query.getPlayer(event);
             if (player != null) {
-                for (int slot : slotSupplier.get()) {
-                    ItemStack stack = compatibility.getBaubleStack(player, slot);
+                EquipmentSnapshot equipment = EquipmentSnapshot.get(player);
+                for (int slot : slots) {
+                    ItemStack stack = equipment.getBauble(player, slot, compatibility);
                     if (!stack.isEmpty()) {
                         for (Predicate<ItemStack> item : items) {
                             if (item.test(stack)) {
@@ -1,5 +1,6 @@
 package mcjty.tools.rules;
 
+import com.google.gson.JsonElement;
 import mcjty.tools.typed.Key;
 import mcjty.tools.typed.Type;
 
@@ -21,21 +22,21 @@ public interface CommonRuleKeys {
     Key<String> WEATHER = Key.create(Type.STRING, "weather");
     Key<String> TEMPCATEGORY = Key.create(Type.STRING, "tempcategory");
     Key<String> DIFFICULTY = Key.create(Type.STRING, "difficulty");
-    Key<String> BLOCK = Key.create(Type.JSON, "block");
-    Key<String> BLOCKOFFSET = Key.create(Type.JSON, "blockoffset");
+    Key<JsonElement> BLOCK = Key.create(Type.JSON_ELEMENT, "block");
+    Key<JsonElement> BLOCKOFFSET = Key.create(Type.JSON_ELEMENT, "blockoffset");
     Key<String> BIOME = Key.create(Type.STRING, "biome");
     Key<String> BIOMETYPE = Key.create(Type.STRING, "biometype");
     Key<String> STRUCTURE = Key.create(Type.STRING, "structure");
     Key<Integer> DIMENSION = Key.create(Type.INTEGER, "dimension");
 
-    Key<String> HELMET = Key.create(Type.JSON, "helmet");
-    Key<String> CHESTPLATE = Key.create(Type.JSON, "chestplate");
-    Key<String> LEGGINGS = Key.create(Type.JSON, "leggings");
-    Key<String> BOOTS = Key.create(Type.JSON, "boots");
-    Key<String> HELDITEM = Key.create(Type.JSON, "helditem");
-    Key<String> PLAYER_HELDITEM = Key.create(Type.JSON, "playerhelditem");
-    Key<String> OFFHANDITEM = Key.create(Type.JSON, "offhanditem");
-    Key<String> BOTHHANDSITEM = Key.create(Type.JSON, "bothhandsitem");
+    Key<JsonElement> HELMET = Key.create(Type.JSON_ELEMENT, "helmet");
+    Key<JsonElement> CHESTPLATE = Key.create(Type.JSON_ELEMENT, "chestplate");
+    Key<JsonElement> LEGGINGS = Key.create(Type.JSON_ELEMENT, "leggings");
+    Key<JsonElement> BOOTS = Key.create(Type.JSON_ELEMENT, "boots");
+    Key<JsonElement> HELDITEM = Key.create(Type.JSON_ELEMENT, "helditem");
+    Key<JsonElement> PLAYER_HELDITEM = Key.create(Type.JSON_ELEMENT, "playerhelditem");
+    Key<JsonElement> OFFHANDITEM = Key.create(Type.JSON_ELEMENT, "offhanditem");
+    Key<JsonElement> BOTHHANDSITEM = Key.create(Type.JSON_ELEMENT, "bothhandsitem");
 
     Key<Boolean> INCITY = Key.create(Type.BOOLEAN, "incity");
     Key<Boolean> INBUILDING = Key.create(Type.BOOLEAN, "inbuilding");
@@ -49,13 +50,13 @@ public interface CommonRuleKeys {
     Key<Boolean> SPRING = Key.create(Type.BOOLEAN, "spring");
     Key<Boolean> AUTUMN = Key.create(Type.BOOLEAN, "autumn");
 
-    Key<String> AMULET = Key.create(Type.JSON, "amulet");
-    Key<String> RING = Key.create(Type.JSON, "ring");
-    Key<String> BELT = Key.create(Type.JSON, "belt");
-    Key<String> TRINKET = Key.create(Type.JSON, "trinket");
-    Key<String> HEAD = Key.create(Type.JSON, "head");
-    Key<String> BODY = Key.create(Type.JSON, "body");
-    Key<String> CHARM = Key.create(Type.JSON, "charm");
+    Key<JsonElement> AMULET = Key.create(Type.JSON_ELEMENT, "amulet");
+    Key<JsonElement> RING = Key.create(Type.JSON_ELEMENT, "ring");
+    Key<JsonElement> BELT = Key.create(Type.JSON_ELEMENT, "belt");
+    Key<JsonElement> TRINKET = Key.create(Type.JSON_ELEMENT, "trinket");
+    Key<JsonElement> HEAD = Key.create(Type.JSON_ELEMENT, "head");
+    Key<JsonElement> BODY = Key.create(Type.JSON_ELEMENT, "body");
+    Key<JsonElement> CHARM = Key.create(Type.JSON_ELEMENT, "charm");
 
     Key<String> STATE = Key.create(Type.STRING, "state");
     Key<String> PSTATE = Key.create(Type.STRING, "pstate");
@@ -77,24 +78,28 @@ public interface CommonRuleKeys {
     Key<Float> ACTION_SIZEADD = Key.create(Type.FLOAT, "sizeadd");
 
     Key<String> ACTION_POTION = Key.create(Type.STRING, "potion");
-    Key<String> ACTION_HELDITEM = Key.create(Type.JSON, "helditem");
-    Key<String> ACTION_ARMORCHEST = Key.create(Type.JSON, "armorchest");
-    Key<String> ACTION_ARMORHELMET = Key.create(Type.JSON, "armorhelmet");
-    Key<String> ACTION_ARMORLEGS = Key.create(Type.JSON, "armorlegs");
-    Key<String> ACTION_ARMORBOOTS = Key.create(Type.JSON, "armorboots");
+    Key<JsonElement> ACTION_HELDITEM = Key.create(Type.JSON_ELEMENT, "helditem");
+    Key<JsonElement> ACTION_ARMORCHEST = Key.create(Type.JSON_ELEMENT, "armorchest");
+    Key<JsonElement> ACTION_ARMORHELMET = Key.create(Type.JSON_ELEMENT, "armorhelmet");
+    Key<JsonElement> ACTION_ARMORLEGS = Key.create(Type.JSON_ELEMENT, "armorlegs");
+    Key<JsonElement> ACTION_ARMORBOOTS = Key.create(Type.JSON_ELEMENT, "armorboots");
+    // Kept as text since NBT strings are not always valid json
     Key<String> ACTION_MOBNBT = Key.create(Type.JSON, "nbt");
     Key<String> ACTION_CUSTOMNAME = Key.create(Type.STRING, "customname");
     Key<Boolean> ACTION_ANGRY = Key.create(Type.BOOLEAN, "angry");
     Key<String> ACTION_MESSAGE = Key.create(Type.STRING, "message");
-    Key<String> ACTION_GIVE = Key.create(Type.JSON, "give");
-    Key<String> ACTION_DROP = Key.create(Type.JSON, "drop");
-    Key<String> ACTION_SETBLOCK = Key.create(Type.JSON, "setblock");
-    Key<String> ACTION_SETHELDITEM = Key.create(Type.JSON, "sethelditem");
+    Key<JsonElement> ACTION_GIVE = Key.create(Type.JSON_ELEMENT, "give");
+    Key<JsonElement> ACTION_DROP = Key.create(Type.JSON_ELEMENT, "drop");
+    Key<JsonElement> ACTION_SETBLOCK = Key.create(Type.JSON_ELEMENT, "setblock");
+    Key<JsonElement> ACTION_SETHELDITEM = Key.create(Type.JSON_ELEMENT, "sethelditem");
     Key<String> ACTION_SETHELDAMOUNT = Key.create(Type.STRING, "setheldamount");
     Key<String> ACTION_SETSTATE = Key.create(Type.STRING, "setstate");
     Key<String> ACTION_SETPSTATE = Key.create(Type.STRING, "setpstate");
 
     Key<String> ACTION_EXPLOSION = Key.create(Type.STRING, "explosion");
+    // 'amount,ticks': at most 'amount' explosions and block changes per chunk every 'ticks' ticks.
+    // These (and drops) are then done at the end of the tick and nearby explosions are merged
+    Key<String> ACTION_RATELIMIT = Key.create(Type.STRING, "ratelimit");
     Key<Integer> ACTION_FIRE = Key.create(Type.INTEGER, "fire");
     Key<Boolean> ACTION_CLEAR = Key.create(Type.BOOLEAN, "clear");
     Key<String> ACTION_DAMAGE = Key.create(Type.STRING, "damage");
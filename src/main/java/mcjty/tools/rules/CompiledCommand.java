@@ -0,0 +1,152 @@
+package mcjty.tools.rules;
+
+import mcjty.tools.varia.DummyCommandSender;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommand;
+import net.minecraft.command.ICommandManager;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.util.text.TextFormatting;
+import net.minecraft.world.World;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.CommandEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A command for the 'command' action that is split into a command name and
+ * arguments once. If a server is running when the rule is compiled the ICommand
+ * is looked up (and unknown commands are reported) right away. Otherwise this
+ * happens when the command is first executed (mod commands are only registered
+ * when the server starts). The command is remembered as long as the command
+ * manager of that server is alive. Commands with entity
+ * selectors ('@p', ...) still go through the command manager since these have to
+ * be expanded every time
+ */
+class CompiledCommand {
+
+    // Senders to use when there is no player, one per world. Removed when the world unloads
+    private static final Senders SENDERS = new Senders();
+
+    private final Logger logger;
+    private final String command;
+    private final String name;
+    private final String[] args;
+    private final boolean selectors;
+
+    // The command manager for which the command was last looked up. Weak so that
+    // a stopped (integrated) server is not kept alive by the rules
+    private WeakReference<ICommandManager> checkedManager = null;
+    private WeakReference<ICommand> resolved = null;
+
+    public CompiledCommand(@Nonnull Logger logger, @Nonnull String command) {
+        this.logger = logger;
+        String cmd = command.trim();
+        if (cmd.startsWith("/")) {
+            cmd = cmd.substring(1);
+        }
+        this.command = cmd;
+        String[] split = cmd.split(" ");
+        this.name = split[0];
+        this.args = Arrays.copyOfRange(split, 1, split.length);
+        this.selectors = cmd.contains("@");
+
+        MinecraftServer server = FMLCommonHandler.instance().getMinecraftServerInstance();
+        if (server != null && server.getCommandManager() != null) {
+            resolve(server);
+        }
+    }
+
+    @Nonnull
+    public static ICommandSender getDummySender(@Nonnull World world) {
+        return SENDERS.get(world);
+    }
+
+    public void execute(@Nonnull World world, @Nonnull ICommandSender sender) {
+        MinecraftServer server = world.getMinecraftServer();
+        if (server == null) {
+            return;
+        }
+        ICommand cmd = selectors ? null : resolve(server);
+        if (cmd == null || !cmd.checkPermission(server, sender)) {
+            // Let the command manager deal with selectors, unknown commands and missing permissions
+            server.getCommandManager().executeCommand(sender, command);
+            return;
+        }
+
+        CommandEvent event = new CommandEvent(cmd, sender, args.clone());
+        if (MinecraftForge.EVENT_BUS.post(event)) {
+            if (event.getException() != null) {
+                logger.log(Level.ERROR, "Error executing command '" + command + "'!", event.getException());
+            }
+            return;
+        }
+        try {
+            cmd.execute(server, sender, event.getParameters());
+        } catch (CommandException e) {
+            TextComponentTranslation message = new TextComponentTranslation(e.getMessage(), e.getErrorObjects());
+            message.getStyle().setColor(TextFormatting.RED);
+            sender.sendMessage(message);
+        } catch (Throwable e) {
+            logger.log(Level.ERROR, "Error executing command '" + command + "'!", e);
+        }
+    }
+
+    @Nullable
+    private ICommand resolve(@Nonnull MinecraftServer server) {
+        ICommandManager manager = server.getCommandManager();
+        if (checkedManager == null || checkedManager.get() != manager) {
+            checkedManager = new WeakReference<>(manager);
+            resolved = null;
+        } else if (resolved != null) {
+            ICommand cmd = resolved.get();
+            if (cmd != null) {
+                return cmd;
+            }
+        }
+
+        // Only a successful lookup is remembered. Unknown commands are reported once per server
+        ICommand cmd = manager.getCommands().get(name);
+        if (cmd != null) {
+            resolved = new WeakReference<>(cmd);
+        } else if (resolved == null) {
+            resolved = new WeakReference<>(null);
+            logger.log(Level.ERROR, "Unknown command '" + name + "' in '" + StringUtils.abbreviate(command, 80) + "'!");
+        }
+        return cmd;
+    }
+
+    // Public so that the event bus can call it
+    public static class Senders {
+
+        private final Map<World, DummyCommandSender> senders = new HashMap<>();
+        private boolean registered = false;
+
+        @Nonnull
+        private DummyCommandSender get(@Nonnull World world) {
+            if (!registered) {
+                // Needed to forget about the sender when the world unloads
+                registered = true;
+                MinecraftForge.EVENT_BUS.register(this);
+            }
+            return senders.computeIfAbsent(world, w -> new DummyCommandSender(w, null));
+        }
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            senders.remove(event.getWorld());
+        }
+    }
+}
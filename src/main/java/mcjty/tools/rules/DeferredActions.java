@@ -0,0 +1,194 @@
+package mcjty.tools.rules;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Optionally defers expensive world changes done by rule actions (setting blocks,
+ * explosions and spawning dropped items) to the end of the world tick. Actions are
+ * done in the order they were queued. Block changes that are queued right after each
+ * other are grouped per chunk and repeated changes to the same position are merged.
+ * The work done per tick is limited by a time budget, the rest carries over to the
+ * next tick. Explosions that are close together and happen in the same tick are
+ * merged into one with the combined strength (up to a maximum).
+ *
+ * Deferring is off by default. Rules with a rate limit always defer their block
+ * changes, explosions and drops (so their explosions can be merged). The batches are flushed from the world tick event.
+ * DEFERRED registers itself on the Forge event bus when the first action is queued
+ */
+public class DeferredActions {
+
+    public static final DeferredActions DEFERRED = new DeferredActions();
+
+    private final Map<Integer, WorldActionBatch> batches = new HashMap<>();
+
+    private boolean enabled = false;
+    private boolean registered = false;
+
+    // Time budget per world per tick in microseconds
+    private long timeBudget = 2000;
+
+    // Explosions closer than this are merged (0 to disable merging)
+    private double explosionMergeRadius = 2.0;
+    private float maxMergedExplosionStrength = 8.0f;
+
+    private long dropped = 0;
+    private long merged = 0;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = Math.max(0, timeBudget);
+    }
+
+    public double getExplosionMergeRadius() {
+        return explosionMergeRadius;
+    }
+
+    public void setExplosionMergeRadius(double explosionMergeRadius) {
+        this.explosionMergeRadius = Math.max(0, explosionMergeRadius);
+    }
+
+    public float getMaxMergedExplosionStrength() {
+        return maxMergedExplosionStrength;
+    }
+
+    public void setMaxMergedExplosionStrength(float maxMergedExplosionStrength) {
+        this.maxMergedExplosionStrength = maxMergedExplosionStrength;
+    }
+
+    /**
+     * The amount of explosions and block changes that were not done because of a rate limit
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * The amount of explosions that were merged into another explosion
+     */
+    public long getMerged() {
+        return merged;
+    }
+
+    public void countDropped() {
+        dropped++;
+    }
+
+    public void resetStatistics() {
+        dropped = 0;
+        merged = 0;
+    }
+
+    /**
+     * The amount of actions that are still waiting in all worlds
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (WorldActionBatch batch : batches.values()) {
+            count += batch.getSize();
+        }
+        return count;
+    }
+
+    public void clean() {
+        batches.clear();
+    }
+
+    public void setBlockState(World world, BlockPos pos, IBlockState state) {
+        setBlockState(world, pos, state, false);
+    }
+
+    /**
+     * With 'force' the change is deferred even if deferring is not enabled
+     */
+    public void setBlockState(World world, BlockPos pos, IBlockState state, boolean force) {
+        if (isDeferred(world, force)) {
+            getBatch(world).setBlockState(pos, state);
+        } else {
+            world.setBlockState(pos, state, 3);
+        }
+    }
+
+    public void newExplosion(World world, double x, double y, double z, float strength, boolean flaming, boolean smoking) {
+        newExplosion(world, x, y, z, strength, flaming, smoking, false);
+    }
+
+    public void newExplosion(World world, double x, double y, double z, float strength, boolean flaming, boolean smoking, boolean force) {
+        if (isDeferred(world, force)) {
+            if (getBatch(world).addExplosion(world.getTotalWorldTime(), x, y, z, strength, flaming, smoking,
+                    explosionMergeRadius, maxMergedExplosionStrength)) {
+                merged++;
+            }
+        } else {
+            world.newExplosion(null, x, y, z, strength, flaming, smoking);
+        }
+    }
+
+    public void spawnEntity(World world, Entity entity) {
+        spawnEntity(world, entity, false);
+    }
+
+    public void spawnEntity(World world, Entity entity, boolean force) {
+        if (isDeferred(world, force)) {
+            getBatch(world).add(w -> w.spawnEntity(entity));
+        } else {
+            world.spawnEntity(entity);
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.world.isRemote) {
+            return;
+        }
+        int dimension = event.world.provider.getDimension();
+        WorldActionBatch batch = batches.get(dimension);
+        if (batch != null) {
+            batch.flush(event.world, System.nanoTime() + timeBudget * 1000);
+            if (batch.isEmpty()) {
+                batches.remove(dimension);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        World world = event.getWorld();
+        if (!world.isRemote) {
+            batches.remove(world.provider.getDimension());
+        }
+    }
+
+    private boolean isDeferred(World world, boolean force) {
+        return (enabled || force) && !world.isRemote;
+    }
+
+    private WorldActionBatch getBatch(World world) {
+        if (!registered) {
+            // Without the tick event nothing would ever be flushed. Registering twice is harmless
+            registered = true;
+            MinecraftForge.EVENT_BUS.register(this);
+        }
+        return batches.computeIfAbsent(world.provider.getDimension(), d -> new WorldActionBatch());
+    }
+}
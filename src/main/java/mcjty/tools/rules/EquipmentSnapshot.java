@@ -0,0 +1,57 @@
+package mcjty.tools.rules;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.item.ItemStack;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The bauble slots of a player during a single tick, kept in one flat array.
+ * Every slot is only fetched through the compatibility layer the first time it
+ * is needed in that tick, so all bauble checks of all rules share the same
+ * lookups. Armor and held items are cheap to get and can change in the middle
+ * of a tick (hotbar swaps, actions) so those are always read from the player.
+ *
+ * Snapshots are only kept for server side players (by identity) and only for
+ * the current tick. Client side players get a fresh snapshot every time
+ */
+class EquipmentSnapshot {
+
+    private static final Map<EntityPlayer, EquipmentSnapshot> SNAPSHOTS = new IdentityHashMap<>();
+    private static long snapshotTime = Long.MIN_VALUE;
+
+    private ItemStack[] baubles = new ItemStack[7];
+
+    @Nonnull
+    public static EquipmentSnapshot get(@Nonnull EntityPlayer player) {
+        if (player.world.isRemote) {
+            return new EquipmentSnapshot();
+        }
+        long now = player.world.getTotalWorldTime();
+        if (now != snapshotTime) {
+            // A new tick: forget all snapshots (and the players they belong to)
+            SNAPSHOTS.clear();
+            snapshotTime = now;
+        }
+        return SNAPSHOTS.computeIfAbsent(player, p -> new EquipmentSnapshot());
+    }
+
+    @Nonnull
+    public ItemStack getBauble(@Nonnull EntityPlayer player, int slot, @Nonnull IModRuleCompatibilityLayer compatibility) {
+        if (slot >= baubles.length) {
+            baubles = Arrays.copyOf(baubles, slot + 1);
+        }
+        ItemStack stack = baubles[slot];
+        if (stack == null) {
+            stack = compatibility.getBaubleStack(player, slot);
+            if (stack == null) {
+                stack = ItemStack.EMPTY;
+            }
+            baubles[slot] = stack;
+        }
+        return stack;
+    }
+}
@@ -0,0 +1,114 @@
+package mcjty.tools.rules;
+
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.SharedMonsterAttributes;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The NBT of the 'nbt' mob action compiled to a list of setters. Well known
+ * vanilla keys that readEntityFromNBT handles are set directly on the entity.
+ * Other keys are merged with the current NBT of the entity which is then read
+ * back, so that fields that are not in the patch keep their value
+ */
+class MobNBTPatch {
+
+    private final List<Consumer<EntityLivingBase>> setters = new ArrayList<>();
+    private final NBTTagCompound remaining = new NBTTagCompound();
+
+    public MobNBTPatch(@Nonnull NBTTagCompound tag) {
+        // Attributes go first since they can change the maximum health
+        if (tag.hasKey("Attributes", 9)) {
+            NBTTagList attributes = tag.getTagList("Attributes", 10);
+            setters.add(living -> {
+                if (living.world != null && !living.world.isRemote) {
+                    SharedMonsterAttributes.setAttributeModifiers(living.getAttributeMap(), attributes);
+                }
+            });
+        }
+        for (String key : tag.getKeySet()) {
+            if (!compile(tag, key)) {
+                remaining.setTag(key, tag.getTag(key).copy());
+            }
+        }
+    }
+
+    private boolean compile(NBTTagCompound tag, String key) {
+        switch (key) {
+            case "Attributes":
+                return tag.hasKey(key, 9);
+            case "Health": {
+                if (!tag.hasKey(key, 99)) {
+                    return false;
+                }
+                float health = tag.getFloat(key);
+                setters.add(living -> living.setHealth(health));
+                return true;
+            }
+            case "AbsorptionAmount": {
+                float amount = tag.getFloat(key);
+                setters.add(living -> living.setAbsorptionAmount(amount));
+                return true;
+            }
+            case "NoAI": {
+                boolean noAI = tag.getBoolean(key);
+                setters.add(living -> {
+                    if (living instanceof EntityLiving) {
+                        ((EntityLiving) living).setNoAI(noAI);
+                    }
+                });
+                return true;
+            }
+            case "CanPickUpLoot": {
+                boolean canPickUp = tag.getBoolean(key);
+                setters.add(living -> {
+                    if (living instanceof EntityLiving) {
+                        ((EntityLiving) living).setCanPickUpLoot(canPickUp);
+                    }
+                });
+                return true;
+            }
+            case "LeftHanded": {
+                boolean leftHanded = tag.getBoolean(key);
+                setters.add(living -> {
+                    if (living instanceof EntityLiving) {
+                        ((EntityLiving) living).setLeftHanded(leftHanded);
+                    }
+                });
+                return true;
+            }
+            case "PersistenceRequired": {
+                // Persistence can only be turned on directly
+                if (!tag.getBoolean(key)) {
+                    return false;
+                }
+                setters.add(living -> {
+                    if (living instanceof EntityLiving) {
+                        ((EntityLiving) living).enablePersistence();
+                    }
+                });
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    public void apply(@Nonnull EntityLivingBase living) {
+        if (!remaining.hasNoTags()) {
+            NBTTagCompound current = new NBTTagCompound();
+            living.writeEntityToNBT(current);
+            current.merge(remaining);
+            living.readEntityFromNBT(current);
+        }
+        for (Consumer<EntityLivingBase> setter : setters) {
+            setter.accept(living);
+        }
+    }
+}
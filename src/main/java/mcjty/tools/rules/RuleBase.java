@@ -3,10 +3,11 @@ package mcjty.tools.rules;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import mcjty.tools.cache.PlayerCache;
 import mcjty.tools.typed.AttributeMap;
 import mcjty.tools.typed.Key;
-import mcjty.tools.varia.DummyCommandSender;
+import mcjty.tools.varia.AliasTable;
+import mcjty.tools.varia.JSonTools;
 import mcjty.tools.varia.LookAtTools;
 import mcjty.tools.varia.Tools;
 import net.minecraft.block.Block;
@@ -14,8 +15,6 @@ import net.minecraft.block.properties.IProperty;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.EntityLiving;
 import net.minecraft.entity.EntityLivingBase;
-import net.minecraft.entity.SharedMonsterAttributes;
-import net.minecraft.entity.ai.attributes.IAttributeInstance;
 import net.minecraft.entity.item.EntityItem;
 import net.minecraft.entity.monster.EntityEnderman;
 import net.minecraft.entity.monster.EntityPigZombie;
@@ -28,7 +27,6 @@ import net.minecraft.nbt.NBTException;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.potion.Potion;
 import net.minecraft.potion.PotionEffect;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.EnumHand;
 import net.minecraft.util.ResourceLocation;
@@ -43,6 +41,7 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -63,27 +62,37 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     protected List<Pair<Float, ItemStack>> getItemsWeighted(List<String> itemNames) {
         List<Pair<Float, ItemStack>> items = new ArrayList<>();
         for (String json : itemNames) {
-            JsonParser parser = new JsonParser();
-            JsonElement element = parser.parse(json);
-            if (element.isJsonPrimitive()) {
-                String name = element.getAsString();
-                Pair<Float, ItemStack> pair = Tools.parseStackWithFactor(name, logger);
-                if (pair.getValue().isEmpty()) {
-                    logger.log(Level.ERROR, "Unknown item '" + name + "'!");
-                } else {
-                    items.add(pair);
-                }
-            } else if (element.isJsonObject()) {
-                JsonObject obj = element.getAsJsonObject();
-                Pair<Float, ItemStack> pair = Tools.parseStackWithFactor(obj, logger);
-                if (pair != null) {
-                    items.add(pair);
-                }
+            addItemWeighted(items, JSonTools.toElement(json));
+        }
+        return items;
+    }
+
+    protected List<Pair<Float, ItemStack>> getItemsWeightedFromJson(List<JsonElement> elements) {
+        List<Pair<Float, ItemStack>> items = new ArrayList<>();
+        for (JsonElement element : elements) {
+            addItemWeighted(items, element);
+        }
+        return items;
+    }
+
+    private void addItemWeighted(List<Pair<Float, ItemStack>> items, JsonElement element) {
+        if (element.isJsonPrimitive()) {
+            String name = element.getAsString();
+            Pair<Float, ItemStack> pair = Tools.parseStackWithFactor(name, logger);
+            if (pair.getValue().isEmpty()) {
+                logger.log(Level.ERROR, "Unknown item '" + name + "'!");
             } else {
-                logger.log(Level.ERROR, "Item description '" + json + "' is not valid!");
+                items.add(pair);
+            }
+        } else if (element.isJsonObject()) {
+            JsonObject obj = element.getAsJsonObject();
+            Pair<Float, ItemStack> pair = Tools.parseStackWithFactor(obj, logger);
+            if (pair != null) {
+                items.add(pair);
             }
+        } else {
+            logger.log(Level.ERROR, "Item description '" + element + "' is not valid!");
         }
-        return items;
     }
 
     protected ItemStack getRandomItem(List<Pair<Float, ItemStack>> items, float total) {
@@ -97,6 +106,13 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         return ItemStack.EMPTY;
     }
 
+    /**
+     * Pick a random item (a copy) in constant time
+     */
+    protected ItemStack getRandomItem(AliasTable<ItemStack> table) {
+        return table.get(rnd).copy();
+    }
+
     protected float getTotal(List<Pair<Float, ItemStack>> items) {
         float total = 0.0f;
         for (Pair<Float, ItemStack> pair : items) {
@@ -116,6 +132,10 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
     protected void addActions(AttributeMap map, IModRuleCompatibilityLayer layer) {
+        // Explosions and block changes of a rule share the same rate limit. Such a rule always
+        // defers these and its drops (in order) so explosions in the same tick can be merged
+        ActionRateLimit limit = getRateLimit(map);
+        boolean defer = limit != null;
         if (map.has(ACTION_COMMAND)) {
             addCommandAction(map);
         }
@@ -125,15 +145,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         if (map.has(ACTION_REMOVESTAGE)) {
             addRemoveStage(map, layer);
         }
-        if (map.has(ACTION_HEALTHMULTIPLY) || map.has(ACTION_HEALTHADD)) {
-            addHealthAction(map);
-        }
-        if (map.has(ACTION_SPEEDMULTIPLY) || map.has(ACTION_SPEEDADD)) {
-            addSpeedAction(map);
-        }
-        if (map.has(ACTION_DAMAGEMULTIPLY) || map.has(ACTION_DAMAGEADD)) {
-            addDamageAction(map);
-        }
+        addAttributeActions(map);
         if (map.has(ACTION_SIZEMULTIPLY) || map.has(ACTION_SIZEADD)) {
             addSizeActions(map);
         }
@@ -168,7 +180,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             addFireAction(map);
         }
         if (map.has(ACTION_EXPLOSION)) {
-            addExplosionAction(map);
+            addExplosionAction(map, limit, defer);
         }
         if (map.has(ACTION_CLEAR)) {
             addClearAction(map);
@@ -183,10 +195,10 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             addGiveAction(map);
         }
         if (map.has(ACTION_DROP)) {
-            addDropAction(map);
+            addDropAction(map, defer);
         }
         if (map.has(ACTION_SETBLOCK)) {
-            addSetBlockAction(map);
+            addSetBlockAction(map, limit, defer);
         }
         if (map.has(ACTION_SETHELDITEM)) {
             addSetHeldItemAction(map);
@@ -243,11 +255,10 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
     private void addCommandAction(AttributeMap map) {
-        String command = map.get(ACTION_COMMAND);
+        CompiledCommand command = new CompiledCommand(logger, map.get(ACTION_COMMAND));
         actions.add(event -> {
-            MinecraftServer server = event.getWorld().getMinecraftServer();
             EntityPlayer player = event.getPlayer();
-            server.commandManager.executeCommand(player != null ? player : new DummyCommandSender(event.getWorld(), null), command);
+            command.execute(event.getWorld(), player != null ? player : CompiledCommand.getDummySender(event.getWorld()));
         });
     }
 
@@ -299,7 +310,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         actions.add(event -> {
             EntityPlayer player = event.getPlayer();
             if (player == null) {
-                player = event.getWorld().getClosestPlayerToEntity(event.getEntityLiving(), 100);
+                player = PlayerCache.CACHE.getClosestPlayer(event.getWorld(), event.getEntityLiving(), 100);
             }
             if (player != null) {
                 player.sendStatusMessage(new TextComponentString(message), false);
@@ -309,7 +320,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
 
 
     private void addGiveAction(AttributeMap map) {
-        final List<Pair<Float, ItemStack>> items = getItemsWeighted(map.getList(ACTION_GIVE));
+        final List<Pair<Float, ItemStack>> items = getItemsWeightedFromJson(map.getList(ACTION_GIVE));
         if (items.isEmpty()) {
             return;
         }
@@ -318,25 +329,28 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             actions.add(event -> {
                 EntityPlayer player = event.getPlayer();
                 if (player != null) {
-                    if (!player.inventory.addItemStackToInventory(item.copy())) {
-                        player.entityDropItem(item.copy(), 1.05f);
-                    }
+                    giveItem(player, item.copy());
                 }
             });
         } else {
-            final float total = getTotal(items);
+            final AliasTable<ItemStack> table = new AliasTable<>(items);
             actions.add(event -> {
                 EntityPlayer player = event.getPlayer();
                 if (player != null) {
-                    ItemStack item = getRandomItem(items, total);
-                    if (!player.inventory.addItemStackToInventory(item.copy())) {
-                        player.entityDropItem(item.copy(), 1.05f);
-                    }
+                    giveItem(player, getRandomItem(table));
                 }
             });
         }
     }
 
+    // Give the stack to the player and drop whatever doesn't fit
+    private static void giveItem(EntityPlayer player, ItemStack stack) {
+        player.inventory.addItemStackToInventory(stack);
+        if (!stack.isEmpty()) {
+            player.entityDropItem(stack, 1.05f);
+        }
+    }
+
     private void addStateAction(AttributeMap map, IModRuleCompatibilityLayer layer) {
         String s = map.get(ACTION_SETSTATE);
         String[] split = StringUtils.split(s, '=');
@@ -372,9 +386,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
     @Nonnull
-    private Function<EventGetter, BlockPos> parseOffset(String json) {
-        JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(json);
+    private Function<EventGetter, BlockPos> parseOffset(JsonElement element) {
         JsonObject obj = element.getAsJsonObject();
 
         int offsetX;
@@ -407,9 +419,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
     private void addSetHeldItemAction(AttributeMap map) {
-        String json = map.get(ACTION_SETHELDITEM);
-        JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(json);
+        JsonElement element = map.get(ACTION_SETHELDITEM);
         ItemStack stack;
         if (element.isJsonPrimitive()) {
             String name = element.getAsString();
@@ -421,7 +431,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
                 return;
             }
         } else {
-            logger.log(Level.ERROR, "Item description '" + json + "' is not valid!");
+            logger.log(Level.ERROR, "Item description '" + element + "' is not valid!");
             return;
         }
         actions.add(event -> event.getPlayer().setHeldItem(EnumHand.MAIN_HAND, stack.copy()));
@@ -464,7 +474,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         }
     }
 
-    private void addSetBlockAction(AttributeMap map) {
+    private void addSetBlockAction(AttributeMap map, @Nullable ActionRateLimit limit, boolean defer) {
         Function<EventGetter, BlockPos> posFunction;
         if (map.has(BLOCKOFFSET)) {
             posFunction = parseOffset(map.get(BLOCKOFFSET));
@@ -472,9 +482,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             posFunction = event -> event.getPosition();
         }
 
-        String json = map.get(ACTION_SETBLOCK);
-        JsonParser parser = new JsonParser();
-        JsonElement element = parser.parse(json);
+        JsonElement element = map.get(ACTION_SETBLOCK);
         if (element.isJsonPrimitive()) {
             String blockname = element.getAsString();
             Block block = ForgeRegistries.BLOCKS.getValue(new ResourceLocation(blockname));
@@ -485,8 +493,8 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             IBlockState state = block.getDefaultState();
             actions.add(event -> {
                 BlockPos pos = posFunction.apply(event);
-                if (pos != null) {
-                    event.getWorld().setBlockState(pos, state, 3);
+                if (pos != null && isAllowed(limit, event.getWorld(), pos)) {
+                    DeferredActions.DEFERRED.setBlockState(event.getWorld(), pos, state, defer);
                 }
             });
         } else {
@@ -519,15 +527,28 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             IBlockState finalState = state;
             actions.add(event -> {
                 BlockPos pos = posFunction.apply(event);
-                if (pos != null) {
-                    event.getWorld().setBlockState(pos, finalState, 3);
+                if (pos != null && isAllowed(limit, event.getWorld(), pos)) {
+                    DeferredActions.DEFERRED.setBlockState(event.getWorld(), pos, finalState, defer);
                 }
             });
         }
     }
 
-    private void addDropAction(AttributeMap map) {
-        final List<Pair<Float, ItemStack>> items = getItemsWeighted(map.getList(ACTION_DROP));
+    @Nullable
+    private ActionRateLimit getRateLimit(AttributeMap map) {
+        return map.has(ACTION_RATELIMIT) ? ActionRateLimit.parse(map.get(ACTION_RATELIMIT), logger) : null;
+    }
+
+    private static boolean isAllowed(@Nullable ActionRateLimit limit, World world, BlockPos pos) {
+        if (limit == null || limit.tryAcquire(world, pos)) {
+            return true;
+        }
+        DeferredActions.DEFERRED.countDropped();
+        return false;
+    }
+
+    private void addDropAction(AttributeMap map, boolean defer) {
+        final List<Pair<Float, ItemStack>> items = getItemsWeightedFromJson(map.getList(ACTION_DROP));
         if (items.isEmpty()) {
             return;
         }
@@ -536,22 +557,21 @@ public class RuleBase<T extends RuleBase.EventGetter> {
             actions.add(event -> {
                 BlockPos pos = event.getPosition();
                 EntityItem entityItem = new EntityItem(event.getWorld(), pos.getX(), pos.getY(), pos.getZ(), item.copy());
-                event.getWorld().spawnEntity(entityItem);
+                DeferredActions.DEFERRED.spawnEntity(event.getWorld(), entityItem, defer);
             });
         } else {
-            final float total = getTotal(items);
+            final AliasTable<ItemStack> table = new AliasTable<>(items);
             actions.add(event -> {
                 BlockPos pos = event.getPosition();
-                ItemStack item = getRandomItem(items, total);
-                EntityItem entityItem = new EntityItem(event.getWorld(), pos.getX(), pos.getY(), pos.getZ(), item.copy());
-                event.getWorld().spawnEntity(entityItem);
+                EntityItem entityItem = new EntityItem(event.getWorld(), pos.getX(), pos.getY(), pos.getZ(), getRandomItem(table));
+                DeferredActions.DEFERRED.spawnEntity(event.getWorld(), entityItem, defer);
             });
         }
     }
 
 
     private void addClearAction(AttributeMap map) {
-        Boolean clear = map.get(ACTION_CLEAR);
+        boolean clear = map.getBoolean(ACTION_CLEAR);
         if (clear) {
             actions.add(event -> {
                 EntityLivingBase living = event.getEntityLiving();
@@ -563,7 +583,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
     private void addFireAction(AttributeMap map) {
-        Integer fireAction = map.get(ACTION_FIRE);
+        int fireAction = map.getInt(ACTION_FIRE);
         actions.add(event -> {
             EntityLivingBase living = event.getEntityLiving();
             if (living != null) {
@@ -573,7 +593,7 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         });
     }
 
-    private void addExplosionAction(AttributeMap map) {
+    private void addExplosionAction(AttributeMap map, @Nullable ActionRateLimit limit, boolean defer) {
         String fireAction = map.get(ACTION_EXPLOSION);
         String[] split = StringUtils.split(fireAction, ",");
         float strength = 1.0f;
@@ -591,8 +611,8 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         boolean finalSmoking = smoking;
         actions.add(event -> {
             BlockPos pos = event.getPosition();
-            if (pos != null) {
-                event.getWorld().newExplosion(null, pos.getX() + .5, pos.getY() + .5, pos.getZ() + .5, finalStrength, finalFlaming, finalSmoking);
+            if (pos != null && isAllowed(limit, event.getWorld(), pos)) {
+                DeferredActions.DEFERRED.newExplosion(event.getWorld(), pos.getX() + .5, pos.getY() + .5, pos.getZ() + .5, finalStrength, finalFlaming, finalSmoking, defer);
             }
         });
     }
@@ -636,38 +656,26 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
 
-    private void addHealthAction(AttributeMap map) {
-        float m = map.has(ACTION_HEALTHMULTIPLY) ? map.get(ACTION_HEALTHMULTIPLY) : 1;
-        float a = map.has(ACTION_HEALTHADD) ? map.get(ACTION_HEALTHADD) : 0;
-        actions.add(event -> {
-            EntityLivingBase entityLiving = event.getEntityLiving();
-            if (entityLiving != null) {
-                if (!entityLiving.getTags().contains("ctrlHealth")) {
-                    IAttributeInstance entityAttribute = entityLiving.getEntityAttribute(SharedMonsterAttributes.MAX_HEALTH);
-                    if (entityAttribute != null) {
-                        double newMax = entityAttribute.getBaseValue() * m + a;
-                        entityAttribute.setBaseValue(newMax);
-                        entityLiving.setHealth((float) newMax);
-                        entityLiving.addTag("ctrlHealth");
-                    }
-                }
-            }
-        });
-    }
-
-    private void addSpeedAction(AttributeMap map) {
-        float m = map.has(ACTION_SPEEDMULTIPLY) ? map.get(ACTION_SPEEDMULTIPLY) : 1;
-        float a = map.has(ACTION_SPEEDADD) ? map.get(ACTION_SPEEDADD) : 0;
+    private void addAttributeActions(AttributeMap map) {
+        List<AttributeChange> changes = new ArrayList<>();
+        if (map.has(ACTION_HEALTHMULTIPLY) || map.has(ACTION_HEALTHADD)) {
+            changes.add(AttributeChange.health(map.has(ACTION_HEALTHMULTIPLY) ? map.getFloat(ACTION_HEALTHMULTIPLY) : 1, map.getFloat(ACTION_HEALTHADD)));
+        }
+        if (map.has(ACTION_SPEEDMULTIPLY) || map.has(ACTION_SPEEDADD)) {
+            changes.add(AttributeChange.speed(map.has(ACTION_SPEEDMULTIPLY) ? map.getFloat(ACTION_SPEEDMULTIPLY) : 1, map.getFloat(ACTION_SPEEDADD)));
+        }
+        if (map.has(ACTION_DAMAGEMULTIPLY) || map.has(ACTION_DAMAGEADD)) {
+            changes.add(AttributeChange.damage(map.has(ACTION_DAMAGEMULTIPLY) ? map.getFloat(ACTION_DAMAGEMULTIPLY) : 1, map.getFloat(ACTION_DAMAGEADD)));
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        AttributeChange[] changeArray = changes.toArray(new AttributeChange[0]);
         actions.add(event -> {
             EntityLivingBase entityLiving = event.getEntityLiving();
             if (entityLiving != null) {
-                if (!entityLiving.getTags().contains("ctrlSpeed")) {
-                    IAttributeInstance entityAttribute = entityLiving.getEntityAttribute(SharedMonsterAttributes.MOVEMENT_SPEED);
-                    if (entityAttribute != null) {
-                        double newMax = entityAttribute.getBaseValue() * m + a;
-                        entityAttribute.setBaseValue(newMax);
-                        entityLiving.addTag("ctrlSpeed");
-                    }
+                for (AttributeChange change : changeArray) {
+                    change.apply(entityLiving);
                 }
             }
         });
@@ -675,8 +683,8 @@ public class RuleBase<T extends RuleBase.EventGetter> {
 
     private void addSizeActions(AttributeMap map) {
         logger.log(Level.WARN, "Mob resizing not implemented yet!");
-        float m = map.has(ACTION_SIZEMULTIPLY) ? map.get(ACTION_SIZEMULTIPLY) : 1;
-        float a = map.has(ACTION_SIZEADD) ? map.get(ACTION_SIZEADD) : 0;
+        float m = map.has(ACTION_SIZEMULTIPLY) ? map.getFloat(ACTION_SIZEMULTIPLY) : 1;
+        float a = map.getFloat(ACTION_SIZEADD);
         actions.add(event -> {
             EntityLivingBase entityLiving = event.getEntityLiving();
             if (entityLiving != null) {
@@ -686,26 +694,8 @@ public class RuleBase<T extends RuleBase.EventGetter> {
         });
     }
 
-    private void addDamageAction(AttributeMap map) {
-        float m = map.has(ACTION_DAMAGEMULTIPLY) ? map.get(ACTION_DAMAGEMULTIPLY) : 1;
-        float a = map.has(ACTION_DAMAGEADD) ? map.get(ACTION_DAMAGEADD) : 0;
-        actions.add(event -> {
-            EntityLivingBase entityLiving = event.getEntityLiving();
-            if (entityLiving != null) {
-                if (!entityLiving.getTags().contains("ctrlDamage")) {
-                    IAttributeInstance entityAttribute = entityLiving.getEntityAttribute(SharedMonsterAttributes.ATTACK_DAMAGE);
-                    if (entityAttribute != null) {
-                        double newMax = entityAttribute.getBaseValue() * m + a;
-                        entityAttribute.setBaseValue(newMax);
-                        entityLiving.addTag("ctrlDamage");
-                    }
-                }
-            }
-        });
-    }
-
-    private void addArmorItem(AttributeMap map, Key<String> itemKey, EntityEquipmentSlot slot) {
-        final List<Pair<Float, ItemStack>> items = getItemsWeighted(map.getList(itemKey));
+    private void addArmorItem(AttributeMap map, Key<JsonElement> itemKey, EntityEquipmentSlot slot) {
+        final List<Pair<Float, ItemStack>> items = getItemsWeightedFromJson(map.getList(itemKey));
         if (items.isEmpty()) {
             return;
         }
@@ -718,18 +708,18 @@ public class RuleBase<T extends RuleBase.EventGetter> {
                 }
             });
         } else {
-            final float total = getTotal(items);
+            final AliasTable<ItemStack> table = new AliasTable<>(items);
             actions.add(event -> {
                 EntityLivingBase entityLiving = event.getEntityLiving();
                 if (entityLiving != null) {
-                    entityLiving.setItemStackToSlot(slot, getRandomItem(items, total));
+                    entityLiving.setItemStackToSlot(slot, getRandomItem(table));
                 }
             });
         }
     }
 
     private void addHeldItem(AttributeMap map) {
-        final List<Pair<Float, ItemStack>> items = getItemsWeighted(map.getList(ACTION_HELDITEM));
+        final List<Pair<Float, ItemStack>> items = getItemsWeightedFromJson(map.getList(ACTION_HELDITEM));
         if (items.isEmpty()) {
             return;
         }
@@ -749,18 +739,19 @@ public class RuleBase<T extends RuleBase.EventGetter> {
                 }
             });
         } else {
-            final float total = getTotal(items);
+            final AliasTable<ItemStack> table = new AliasTable<>(items);
             actions.add(event -> {
                 EntityLivingBase entityLiving = event.getEntityLiving();
                 if (entityLiving != null) {
-                    ItemStack item = getRandomItem(items, total);
                     if (entityLiving instanceof EntityEnderman) {
+                        // Only the block is used so there is no need for a copy
+                        ItemStack item = table.get(rnd);
                         if (item.getItem() instanceof ItemBlock) {
                             ItemBlock b = (ItemBlock) item.getItem();
                             ((EntityEnderman) entityLiving).setHeldBlockState(b.getBlock().getStateFromMeta(b.getMetadata(item.getItemDamage())));
                         }
                     } else {
-                        entityLiving.setHeldItem(EnumHand.MAIN_HAND, item.copy());
+                        entityLiving.setHeldItem(EnumHand.MAIN_HAND, getRandomItem(table));
                     }
                 }
             });
@@ -777,9 +768,12 @@ public class RuleBase<T extends RuleBase.EventGetter> {
                 logger.log(Level.ERROR, "Bad NBT for mob!");
                 return;
             }
+            MobNBTPatch patch = new MobNBTPatch(tagCompound);
             actions.add(event -> {
                 EntityLivingBase entityLiving = event.getEntityLiving();
-                entityLiving.readEntityFromNBT(tagCompound);
+                if (entityLiving != null) {
+                    patch.apply(entityLiving);
+                }
             });
         }
     }
@@ -795,17 +789,17 @@ public class RuleBase<T extends RuleBase.EventGetter> {
     }
 
     private void addAngryAction(AttributeMap map) {
-        if (map.get(ACTION_ANGRY)) {
+        if (map.getBoolean(ACTION_ANGRY)) {
             actions.add(event -> {
                 EntityLivingBase entityLiving = event.getEntityLiving();
                 if (entityLiving instanceof EntityPigZombie) {
                     EntityPigZombie pigZombie = (EntityPigZombie) entityLiving;
-                    EntityPlayer player = event.getWorld().getClosestPlayerToEntity(entityLiving, 50);
+                    EntityPlayer player = PlayerCache.CACHE.getClosestPlayer(event.getWorld(), entityLiving, 50);
                     if (player != null) {
                         pigZombie.setRevengeTarget(player);
                     }
                 } else if (entityLiving instanceof EntityLiving) {
-                    EntityPlayer player = event.getWorld().getClosestPlayerToEntity(entityLiving, 50);
+                    EntityPlayer player = PlayerCache.CACHE.getClosestPlayer(event.getWorld(), entityLiving, 50);
                     if (player != null) {
                         ((EntityLiving) entityLiving).setAttackTarget(player);
                     }
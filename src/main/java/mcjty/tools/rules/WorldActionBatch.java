@@ -0,0 +1,155 @@
+package mcjty.tools.rules;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * The deferred actions for a single world, executed in the order they were
+ * added. Block changes that are added right after each other form a run: within
+ * a run they are grouped per chunk and only the last change to a given position
+ * is kept. A block change never moves past another action. Explosions close to
+ * each other that are added in the same tick (with no block change in between)
+ * can be merged into one
+ */
+class WorldActionBatch {
+
+    private static class PendingExplosion implements Consumer<World> {
+        private final double x;
+        private final double y;
+        private final double z;
+        private float strength;
+        private boolean flaming;
+        private boolean smoking;
+        private boolean done = false;
+
+        private PendingExplosion(double x, double y, double z, float strength, boolean flaming, boolean smoking) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.strength = strength;
+            this.flaming = flaming;
+            this.smoking = smoking;
+        }
+
+        @Override
+        public void accept(World world) {
+            done = true;
+            world.newExplosion(null, x, y, z, strength, flaming, smoking);
+        }
+    }
+
+    // Consecutive block changes: chunk -> (position -> new state)
+    private static class BlockRun {
+        private final Map<Long, Map<BlockPos, IBlockState>> chunks = new LinkedHashMap<>();
+    }
+
+    // BlockRun or Consumer<World>, in the order they were added
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private int size = 0;
+
+    // Explosions added during the current tick after the last block change (candidates for merging)
+    private final List<PendingExplosion> recentExplosions = new ArrayList<>();
+    private long recentTime = Long.MIN_VALUE;
+
+    public void setBlockState(BlockPos pos, IBlockState state) {
+        Object last = queue.peekLast();
+        BlockRun run;
+        if (last instanceof BlockRun) {
+            run = (BlockRun) last;
+        } else {
+            run = new BlockRun();
+            queue.add(run);
+        }
+        Map<BlockPos, IBlockState> chunk = run.chunks.computeIfAbsent(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4), c -> new LinkedHashMap<>());
+        if (chunk.put(pos.toImmutable(), state) == null) {
+            size++;
+        }
+        // Merging a later explosion into an earlier one would move it before this change
+        recentExplosions.clear();
+    }
+
+    public void add(Consumer<World> action) {
+        queue.add(action);
+        size++;
+    }
+
+    /**
+     * Add an explosion. If there is already an explosion in this tick within the merge
+     * radius (and no block change was added after it) the two are merged: the strength
+     * is added (up to the maximum) and the new explosion is dropped. Returns true in that case
+     */
+    public boolean addExplosion(long time, double x, double y, double z, float strength, boolean flaming, boolean smoking,
+                                double mergeRadius, float maxStrength) {
+        if (time != recentTime) {
+            recentExplosions.clear();
+            recentTime = time;
+        }
+        if (mergeRadius > 0) {
+            double radiusSq = mergeRadius * mergeRadius;
+            for (PendingExplosion explosion : recentExplosions) {
+                double dx = explosion.x - x;
+                double dy = explosion.y - y;
+                double dz = explosion.z - z;
+                if (!explosion.done && dx * dx + dy * dy + dz * dz <= radiusSq) {
+                    explosion.strength = Math.max(explosion.strength, Math.min(maxStrength, explosion.strength + strength));
+                    explosion.flaming |= flaming;
+                    explosion.smoking |= smoking;
+                    return true;
+                }
+            }
+        }
+        PendingExplosion explosion = new PendingExplosion(x, y, z, strength, flaming, smoking);
+        recentExplosions.add(explosion);
+        add(explosion);
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Execute queued actions in order until the deadline (System.nanoTime()) is passed.
+     * At least one chunk of block changes or one other action is always done. Whatever
+     * is left stays queued for the next flush
+     */
+    public void flush(World world, long deadline) {
+        boolean first = true;
+        while (!queue.isEmpty()) {
+            Object head = queue.peek();
+            if (head instanceof BlockRun) {
+                Iterator<Map<BlockPos, IBlockState>> chunkIterator = ((BlockRun) head).chunks.values().iterator();
+                while (chunkIterator.hasNext()) {
+                    if (!first && System.nanoTime() > deadline) {
+                        return;
+                    }
+                    first = false;
+                    Map<BlockPos, IBlockState> chunk = chunkIterator.next();
+                    chunkIterator.remove();
+                    size -= chunk.size();
+                    for (Map.Entry<BlockPos, IBlockState> entry : chunk.entrySet()) {
+                        world.setBlockState(entry.getKey(), entry.getValue(), 3);
+                    }
+                }
+                queue.poll();
+            } else {
+                if (!first && System.nanoTime() > deadline) {
+                    return;
+                }
+                first = false;
+                queue.poll();
+                size--;
+                ((Consumer<World>) head).accept(world);
+            }
+        }
+    }
+}
@@ -1,39 +1,215 @@
 package mcjty.tools.typed;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
 import javax.annotation.Nonnull;
 import java.util.*;
 
+/**
+ * Values are stored in an array indexed by the ordinal of the key. A bitset
+ * keeps track of which keys are present. Single values of primitive types
+ * are stored unboxed in a separate array (as raw bits) and multiple
+ * integer values are stored in an IntList.
+ *
+ * A frozen map (see freeze()) can no longer be modified. It uses exactly
+ * sized arrays and immutable lists so that it can be shared between
+ * threads once it is safely published. Json values are copied when a map is
+ * frozen so the frozen map doesn't share them with the parsed json. Gson has no
+ * immutable json elements so users of a frozen map must not modify them
+ */
 public class AttributeMap {
 
-    private final Map<Key<?>, Object> values = new HashMap<>();
+    // Stored for a primitive key that was set to null, so that get() doesn't return 0
+    private static final Object NULL_PRIMITIVE = new Object();
+
+    private Object[] values;
+    private long[] primitives;
+    private long[] present;
+    private final boolean frozen;
+
+    public AttributeMap() {
+        values = new Object[Key.getKeyCount()];
+        primitives = new long[values.length];
+        present = new long[(values.length + 63) >> 6];
+        frozen = false;
+    }
+
+    private AttributeMap(Object[] values, long[] primitives, long[] present) {
+        this.values = values;
+        this.primitives = primitives;
+        this.present = present;
+        this.frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Return an immutable compact copy of this map
+     */
+    @Nonnull
+    public AttributeMap freeze() {
+        return freeze(new ValueInterner());
+    }
+
+    /**
+     * Return an immutable compact copy of this map. Strings and other non
+     * primitive values are interned with the given interner so that equal
+     * values are shared between all maps frozen with the same interner
+     */
+    @Nonnull
+    public AttributeMap freeze(@Nonnull ValueInterner interner) {
+        if (frozen) {
+            return this;
+        }
+        int length = 0;
+        for (int word = present.length - 1; word >= 0; word--) {
+            if (present[word] != 0) {
+                length = (word << 6) + 64 - Long.numberOfLeadingZeros(present[word]);
+                break;
+            }
+        }
+        Object[] v = new Object[length];
+        long[] p = new long[length];
+        for (int i = 0; i < length; i++) {
+            Object value = values[i];
+            if (value == NULL_PRIMITIVE) {
+                v[i] = value;
+            } else if (value instanceof IntList) {
+                v[i] = ((IntList) value).freeze();
+            } else if (value instanceof List) {
+                v[i] = freezeList((List<?>) value, interner);
+            } else {
+                v[i] = interner.intern(copyJson(value));
+            }
+            p[i] = primitives[i];
+        }
+        return new AttributeMap(v, p, Arrays.copyOf(present, (length + 63) >> 6));
+    }
+
+    private static List<Object> freezeList(List<?> list, ValueInterner interner) {
+        if (list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] elements = new Object[list.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = interner.intern(copyJson(list.get(i)));
+        }
+        return Collections.unmodifiableList(Arrays.asList(elements));
+    }
+
+    // Json objects and arrays are mutable so they get a private copy. Primitives are immutable
+    private static Object copyJson(Object value) {
+        if (value instanceof JsonObject) {
+            JsonObject copy = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) value).entrySet()) {
+                copy.add(entry.getKey(), (JsonElement) copyJson(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof JsonArray) {
+            JsonArray copy = new JsonArray();
+            for (JsonElement element : (JsonArray) value) {
+                copy.add((JsonElement) copyJson(element));
+            }
+            return copy;
+        }
+        return value;
+    }
 
     public <A> boolean has(@Nonnull Key<A> key) {
-        return values.containsKey(key);
+        int ordinal = key.getOrdinal();
+        int word = ordinal >> 6;
+        return word < present.length && (present[word] & (1L << ordinal)) != 0;
     }
 
     public <A> void set(@Nonnull Key<A> key, A value) {
-        values.put(key, value);
+        Type<A> type = key.getType();
+        if (type.isPrimitive()) {
+            if (value == null) {
+                put(key.getOrdinal(), NULL_PRIMITIVE);
+            } else {
+                putPrimitive(key.getOrdinal(), toBits(type, value));
+            }
+        } else {
+            put(key.getOrdinal(), value);
+        }
     }
 
     public <A> void setNonnull(@Nonnull Key<A> key, A value) {
         if (value != null) {
-            values.put(key, value);
+            set(key, value);
         }
     }
 
+    public void setInt(@Nonnull Key<Integer> key, int value) {
+        putPrimitive(key.getOrdinal(), value);
+    }
+
+    public void setLong(@Nonnull Key<Long> key, long value) {
+        putPrimitive(key.getOrdinal(), value);
+    }
+
+    public void setFloat(@Nonnull Key<Float> key, float value) {
+        putPrimitive(key.getOrdinal(), Float.floatToRawIntBits(value));
+    }
+
+    public void setDouble(@Nonnull Key<Double> key, double value) {
+        putPrimitive(key.getOrdinal(), Double.doubleToRawLongBits(value));
+    }
+
+    public void setBoolean(@Nonnull Key<Boolean> key, boolean value) {
+        putPrimitive(key.getOrdinal(), value ? 1 : 0);
+    }
+
     public <A> A get(@Nonnull Key<A> key) {
-        return (A) values.get(key);
+        int ordinal = key.getOrdinal();
+        if (ordinal >= values.length) {
+            return null;
+        }
+        Object value = values[ordinal];
+        if (value == NULL_PRIMITIVE) {
+            return null;
+        }
+        if (value == null && key.getType().isPrimitive() && has(key)) {
+            return fromBits(key.getType(), primitives[ordinal]);
+        }
+        return (A) value;
     }
 
     public <A> Optional<A> getOptional(@Nonnull Key<A> key) {
-        return Optional.ofNullable((A) values.get(key));
+        return Optional.ofNullable(get(key));
+    }
+
+    // The primitive getters return 0 (or false) if the key is not present
+
+    public int getInt(@Nonnull Key<Integer> key) {
+        return has(key) ? (int) primitives[key.getOrdinal()] : 0;
+    }
+
+    public long getLong(@Nonnull Key<Long> key) {
+        return has(key) ? primitives[key.getOrdinal()] : 0;
+    }
+
+    public float getFloat(@Nonnull Key<Float> key) {
+        return has(key) ? Float.intBitsToFloat((int) primitives[key.getOrdinal()]) : 0;
+    }
+
+    public double getDouble(@Nonnull Key<Double> key) {
+        return has(key) ? Double.longBitsToDouble(primitives[key.getOrdinal()]) : 0;
+    }
+
+    public boolean getBoolean(@Nonnull Key<Boolean> key) {
+        return has(key) && primitives[key.getOrdinal()] != 0;
     }
 
     public <A> void addList(@Nonnull Key<A> key, A value) {
-        if (!values.containsKey(key)) {
-            values.put(key, new ArrayList<>());
+        if (!has(key)) {
+            put(key.getOrdinal(), key.getType() == Type.INTEGER ? new IntList() : new ArrayList<>());
         }
-        List l = (List) values.get(key);
+        List l = (List) get(key);
         l.add(value);
     }
 
@@ -41,17 +217,87 @@ public class AttributeMap {
         if (value == null) {
             return;
         }
-        if (!values.containsKey(key)) {
-            values.put(key, new ArrayList<>());
+        addList(key, value);
+    }
+
+    public void addInt(@Nonnull Key<Integer> key, int value) {
+        if (!has(key)) {
+            put(key.getOrdinal(), new IntList());
         }
-        List l = (List) values.get(key);
-        l.add(value);
+        ((IntList) values[key.getOrdinal()]).addInt(value);
     }
 
     public <A> List<A> getList(@Nonnull Key<A> key) {
-        if (!values.containsKey(key)) {
+        if (!has(key)) {
             return Collections.emptyList();
         }
-        return (List<A>) values.get(key);
+        return (List<A>) get(key);
+    }
+
+    @Nonnull
+    public IntList getIntList(@Nonnull Key<Integer> key) {
+        Object value = has(key) ? values[key.getOrdinal()] : null;
+        return value instanceof IntList ? (IntList) value : IntList.EMPTY;
+    }
+
+    private void put(int ordinal, Object value) {
+        checkNotFrozen();
+        ensureCapacity(ordinal);
+        values[ordinal] = value;
+        primitives[ordinal] = 0;
+        present[ordinal >> 6] |= 1L << ordinal;
+    }
+
+    private void putPrimitive(int ordinal, long bits) {
+        checkNotFrozen();
+        ensureCapacity(ordinal);
+        values[ordinal] = null;
+        primitives[ordinal] = bits;
+        present[ordinal >> 6] |= 1L << ordinal;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("This attribute map is frozen!");
+        }
+    }
+
+    // Keys can be created after this map was made
+    private void ensureCapacity(int ordinal) {
+        if (ordinal >= values.length) {
+            values = Arrays.copyOf(values, Math.max(ordinal + 1, Key.getKeyCount()));
+            primitives = Arrays.copyOf(primitives, values.length);
+            present = Arrays.copyOf(present, (values.length + 63) >> 6);
+        }
+    }
+
+    private static long toBits(Type<?> type, Object value) {
+        if (type == Type.INTEGER) {
+            return (Integer) value;
+        } else if (type == Type.LONG) {
+            return (Long) value;
+        } else if (type == Type.FLOAT) {
+            return Float.floatToRawIntBits((Float) value);
+        } else if (type == Type.DOUBLE) {
+            return Double.doubleToRawLongBits((Double) value);
+        } else if (type == Type.BOOLEAN) {
+            return ((Boolean) value) ? 1 : 0;
+        }
+        throw new IllegalArgumentException("Unknown primitive type " + type + "!");
+    }
+
+    private static <A> A fromBits(Type<A> type, long bits) {
+        if (type == Type.INTEGER) {
+            return (A) Integer.valueOf((int) bits);
+        } else if (type == Type.LONG) {
+            return (A) Long.valueOf(bits);
+        } else if (type == Type.FLOAT) {
+            return (A) Float.valueOf(Float.intBitsToFloat((int) bits));
+        } else if (type == Type.DOUBLE) {
+            return (A) Double.valueOf(Double.longBitsToDouble(bits));
+        } else if (type == Type.BOOLEAN) {
+            return (A) Boolean.valueOf(bits != 0);
+        }
+        throw new IllegalArgumentException("Unknown primitive type " + type + "!");
     }
 }
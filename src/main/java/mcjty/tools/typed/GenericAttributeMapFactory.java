@@ -1,91 +1,292 @@
 package mcjty.tools.typed;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import mcjty.tools.varia.JSonTools;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class GenericAttributeMapFactory {
 
-    private final List<Attribute> attributes = new ArrayList<>();
+    /**
+     * Parses the json value of a single attribute into the map
+     */
+    private interface AttributeParser {
+        void parse(JsonElement element, AttributeMap map);
+    }
+
+    private static final Gson GSON = new Gson();
+
+    // Attribute name -> attributes in declaration order. Multiple attributes can share the same name
+    private final Map<String, List<Attribute>> attributes = new LinkedHashMap<>();
+
+    // Attribute name -> parser
+    private final Map<String, AttributeParser> parsers = new HashMap<>();
 
     public GenericAttributeMapFactory attribute(@Nonnull Attribute a) {
-        attributes.add(a);
+        String name = a.getKey().getName();
+        attributes.computeIfAbsent(name, n -> new ArrayList<>()).add(a);
+        AttributeParser parser = createParser(a);
+        AttributeParser existing = parsers.get(name);
+        if (existing == null) {
+            parsers.put(name, parser);
+        } else {
+            parsers.put(name, (element, map) -> {
+                existing.parse(element, map);
+                parser.parse(element, map);
+            });
+        }
         return this;
     }
 
+    /**
+     * Parse the element and freeze the result. Use the same interner for all
+     * rules of a pack so that equal values are only kept once
+     */
+    @Nonnull
+    public AttributeMap parse(@Nonnull JsonElement element, @Nonnull ValueInterner interner) {
+        return parse(element).freeze(interner);
+    }
+
     @Nonnull
     public AttributeMap parse(@Nonnull JsonElement element) {
         JsonObject jsonObject = element.getAsJsonObject();
         AttributeMap map = new AttributeMap();
 
-        for (Attribute attribute : attributes) {
-            Key key = attribute.getKey();
-            Type type = key.getType();
-
-            if (attribute.isMulti()) {
-                Function<JsonElement, Object> transformer;
-                if (type == Type.INTEGER) {
-                    transformer = JsonElement::getAsInt;
-                } else if (type == Type.FLOAT) {
-                    transformer = JsonElement::getAsFloat;
-                } else if (type == Type.BOOLEAN) {
-                    transformer = JsonElement::getAsBoolean;
-                } else if (type == Type.STRING) {
-                    transformer = JsonElement::getAsString;
-                } else if (type == Type.JSON) {
-                    transformer = JsonElement::toString;
-                } else {
-                    transformer = e -> "INVALID";
-                }
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            AttributeParser parser = parsers.get(entry.getKey());
+            if (parser != null) {
+                parser.parse(entry.getValue(), map);
+            }
+        }
+
+        return map;
+    }
 
-                JSonTools.getElement(jsonObject, key.getName())
-                        .ifPresent(e -> {
-                            JSonTools.asArrayOrSingle(e)
-                                    .map(transformer)
-                                    .forEach(s -> {
-                                        map.addListNonnull(key, s);
-                                    });
-                        });
+    /**
+     * Read rules straight from a reader without building a tree for the whole
+     * file. The input is either a single rule object or an array of rule objects.
+     * The consumer is called with the map of every rule in order. Only the values
+     * of known attributes are parsed, everything else is skipped
+     */
+    public void parse(@Nonnull Reader reader, @Nonnull Consumer<AttributeMap> consumer) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                consumer.accept(parse(jsonReader));
+            }
+            jsonReader.endArray();
+        } else {
+            consumer.accept(parse(jsonReader));
+        }
+    }
+
+    /**
+     * Read a single rule object from the reader
+     */
+    @Nonnull
+    public AttributeMap parse(@Nonnull JsonReader reader) throws IOException {
+        AttributeMap map = new AttributeMap();
+        JsonParser parser = new JsonParser();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            AttributeParser attributeParser = parsers.get(reader.nextName());
+            if (attributeParser == null) {
+                reader.skipValue();
             } else {
-                if (type == Type.INTEGER) {
-                    map.setNonnull(key, JSonTools.parseInt(jsonObject, key.getName()));
-                } else if (type == Type.FLOAT) {
-                    map.setNonnull(key, JSonTools.parseFloat(jsonObject, key.getName()));
-                } else if (type == Type.BOOLEAN) {
-                    map.setNonnull(key, JSonTools.parseBool(jsonObject, key.getName()));
-                } else if (type == Type.STRING) {
-                    if (jsonObject.has(key.getName())) {
-                        map.setNonnull(key, jsonObject.get(key.getName()).getAsString());
+                // Only the value of this attribute is turned into a tree
+                attributeParser.parse(parser.parse(reader), map);
+            }
+        }
+        reader.endObject();
+        return map;
+    }
+
+    /**
+     * Write the maps as a json array of rules. Every rule is written directly
+     * to the writer so no json tree is built in memory
+     */
+    public void write(@Nonnull Writer writer, @Nonnull Iterable<AttributeMap> maps) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setIndent("    ");
+        jsonWriter.beginArray();
+        for (AttributeMap map : maps) {
+            write(jsonWriter, map);
+        }
+        jsonWriter.endArray();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Write a single rule as a json object. Only the attributes known by this
+     * factory are written, in the order in which they were declared. The result
+     * parses back to an equivalent map
+     */
+    public void write(@Nonnull JsonWriter writer, @Nonnull AttributeMap map) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, List<Attribute>> entry : attributes.entrySet()) {
+            // Attributes with the same name are parsed from the same value so writing one is enough
+            for (Attribute attribute : entry.getValue()) {
+                if (map.has(attribute.getKey())) {
+                    writer.name(entry.getKey());
+                    writeValue(writer, map, attribute);
+                    break;
+                }
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void writeValue(JsonWriter writer, AttributeMap map, Attribute attribute) throws IOException {
+        Key key = attribute.getKey();
+        Type type = key.getType();
+
+        if (attribute.isMulti()) {
+            if (type == Type.INTEGER) {
+                IntList values = map.getIntList(key);
+                if (values.size() == 1) {
+                    writer.value(values.getInt(0));
+                } else {
+                    writer.beginArray();
+                    for (int i = 0; i < values.size(); i++) {
+                        writer.value(values.getInt(i));
                     }
-                } else if (type == Type.JSON) {
-                    if (jsonObject.has(key.getName())) {
-                        JsonElement el = jsonObject.get(key.getName());
-                        if (el.isJsonObject()) {
-                            JsonObject obj = el.getAsJsonObject();
-                            map.setNonnull(key, obj.toString());
-                        } else {
-                            if (el.isJsonPrimitive()) {
-                                JsonPrimitive prim = el.getAsJsonPrimitive();
-                                if (prim.isString()) {
-                                    map.setNonnull(key, prim.getAsString());
-                                } else if (prim.isNumber()) {
-                                    map.setNonnull(key, "" + prim.getAsInt());
-                                } else {
-                                    throw new RuntimeException("Bad type for key '" + key.getName() + "'!");
-                                }
-                            }
-                        }
+                    writer.endArray();
+                }
+            } else {
+                List<Object> values = map.getList(key);
+                if (values.size() == 1) {
+                    writeSingle(writer, type, values.get(0), true);
+                } else {
+                    writer.beginArray();
+                    for (Object value : values) {
+                        writeSingle(writer, type, value, true);
                     }
+                    writer.endArray();
                 }
             }
+        } else if (type == Type.INTEGER) {
+            writer.value(map.getInt(key));
+        } else if (type == Type.LONG) {
+            writer.value(map.getLong(key));
+        } else if (type == Type.FLOAT) {
+            writer.value(Float.valueOf(map.getFloat(key)));
+        } else if (type == Type.DOUBLE) {
+            writer.value(map.getDouble(key));
+        } else if (type == Type.BOOLEAN) {
+            writer.value(map.getBoolean(key));
+        } else {
+            writeSingle(writer, type, map.get(key), false);
         }
+    }
 
-        return map;
+    private static void writeSingle(JsonWriter writer, Type type, Object value, boolean multi) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (type == Type.JSON_ELEMENT) {
+            GSON.toJson((JsonElement) value, writer);
+        } else if (type == Type.JSON && multi) {
+            // Values of a list are kept as json text
+            GSON.toJson(new JsonParser().parse((String) value), writer);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    private static AttributeParser createParser(Attribute attribute) {
+        Key key = attribute.getKey();
+        Type type = key.getType();
+
+        if (attribute.isMulti()) {
+            if (type == Type.INTEGER) {
+                return (element, map) -> JSonTools.forEachIntArrayOrSingle(element, v -> map.addInt(key, v));
+            }
+
+            Function<JsonElement, Object> transformer;
+            if (type == Type.FLOAT) {
+                transformer = JsonElement::getAsFloat;
+            } else if (type == Type.LONG) {
+                transformer = JsonElement::getAsLong;
+            } else if (type == Type.DOUBLE) {
+                transformer = JsonElement::getAsDouble;
+            } else if (type == Type.BOOLEAN) {
+                transformer = JsonElement::getAsBoolean;
+            } else if (type == Type.STRING) {
+                transformer = JsonElement::getAsString;
+            } else if (type == Type.JSON) {
+                transformer = JsonElement::toString;
+            } else if (type == Type.JSON_ELEMENT) {
+                transformer = e -> e;
+            } else {
+                transformer = e -> "INVALID";
+            }
+
+            return (element, map) -> JSonTools.forEachArrayOrSingle(element, e -> map.addListNonnull(key, transformer.apply(e)));
+        }
+
+        if (type == Type.INTEGER) {
+            return (element, map) -> map.setInt(key, element.getAsInt());
+        } else if (type == Type.FLOAT) {
+            return (element, map) -> map.setFloat(key, element.getAsFloat());
+        } else if (type == Type.LONG) {
+            return (element, map) -> map.setLong(key, element.getAsLong());
+        } else if (type == Type.DOUBLE) {
+            return (element, map) -> map.setDouble(key, element.getAsDouble());
+        } else if (type == Type.BOOLEAN) {
+            return (element, map) -> map.setBoolean(key, element.getAsBoolean());
+        } else if (type == Type.STRING) {
+            return (element, map) -> map.setNonnull(key, element.getAsString());
+        } else if (type == Type.JSON) {
+            return (element, map) -> {
+                if (element.isJsonObject()) {
+                    map.setNonnull(key, element.getAsJsonObject().toString());
+                } else if (element.isJsonPrimitive()) {
+                    JsonPrimitive prim = element.getAsJsonPrimitive();
+                    if (prim.isString()) {
+                        map.setNonnull(key, prim.getAsString());
+                    } else if (prim.isNumber()) {
+                        map.setNonnull(key, "" + prim.getAsInt());
+                    } else {
+                        throw new RuntimeException("Bad type for key '" + key.getName() + "'!");
+                    }
+                }
+            };
+        } else if (type == Type.JSON_ELEMENT) {
+            return (element, map) -> {
+                if (element.isJsonObject()) {
+                    map.setNonnull(key, element);
+                } else if (element.isJsonPrimitive()) {
+                    JsonPrimitive prim = element.getAsJsonPrimitive();
+                    if (prim.isString()) {
+                        // A string can itself contain json ("{\"block\": ...}")
+                        map.setNonnull(key, JSonTools.parseEmbedded(prim));
+                    } else if (prim.isNumber()) {
+                        map.setNonnull(key, new JsonPrimitive(prim.getAsInt()));
+                    } else {
+                        throw new RuntimeException("Bad type for key '" + key.getName() + "'!");
+                    }
+                }
+            };
+        }
+        // Unknown types are ignored
+        return (element, map) -> { };
     }
 }
@@ -0,0 +1,93 @@
+package mcjty.tools.typed;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of integers backed by an int array. It can be used as a normal
+ * List<Integer> but the primitive accessors avoid boxing
+ */
+public class IntList extends AbstractList<Integer> implements RandomAccess {
+
+    public static final IntList EMPTY = new IntList(new int[0], 0, true);
+
+    private int[] values;
+    private int size;
+    private final boolean immutable;
+
+    public IntList() {
+        this(new int[4], 0, false);
+    }
+
+    private IntList(int[] values, int size, boolean immutable) {
+        this.values = values;
+        this.size = size;
+        this.immutable = immutable;
+    }
+
+    public static IntList of(int... values) {
+        return new IntList(values.clone(), values.length, false);
+    }
+
+    /**
+     * Return an immutable copy of this list that uses an exactly sized array
+     */
+    public IntList freeze() {
+        if (immutable) {
+            return this;
+        }
+        return size == 0 ? EMPTY : new IntList(toIntArray(), size, true);
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public int getInt(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    public void addInt(int value) {
+        if (immutable) {
+            throw new UnsupportedOperationException();
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size * 2));
+        }
+        values[size++] = value;
+        modCount++;
+    }
+
+    public boolean containsInt(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        addInt(value);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -2,15 +2,21 @@ package mcjty.tools.typed;
 
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Key<V> {
 
+    // Every key gets a unique dense ordinal so that it can be used as an index in an array
+    private static final AtomicInteger ORDINALS = new AtomicInteger();
+
     @Nonnull private final Type<V> type;
     @Nonnull private final String name;
+    private final int ordinal;
 
     Key(@Nonnull final Type<V> type, @Nonnull final String name) {
         this.type = type;
         this.name = name;
+        this.ordinal = ORDINALS.getAndIncrement();
     }
 
     @Nonnull
@@ -19,6 +25,13 @@ public class Key<V> {
         return new Key<V>(type, code);
     }
 
+    /**
+     * The amount of keys that have been created so far
+     */
+    public static int getKeyCount() {
+        return ORDINALS.get();
+    }
+
     @Nonnull
     public Type<V> getType() {
         return type;
@@ -29,6 +42,10 @@ public class Key<V> {
         return name;
     }
 
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     @Override
     public String toString() {
         return "Key(" + name + ')';
@@ -1,5 +1,7 @@
 package mcjty.tools.typed;
 
+import com.google.gson.JsonElement;
+
 import javax.annotation.Nonnull;
 import java.util.List;
 
@@ -11,22 +13,30 @@ public final class Type<V> {
     // Root
     public static final Type<Object> OBJECT = new Type<Object>(Object.class);
 
-    // Basic
-    public static final Type<Integer> INTEGER = create(Integer.class);
-    public static final Type<Double> DOUBLE = create(Double.class);
-    public static final Type<Float> FLOAT = create(Float.class);
-    public static final Type<Long> LONG = create(Long.class);
+    // Basic (primitive types are stored unboxed in an AttributeMap)
+    public static final Type<Integer> INTEGER = createPrimitive(Integer.class);
+    public static final Type<Double> DOUBLE = createPrimitive(Double.class);
+    public static final Type<Float> FLOAT = createPrimitive(Float.class);
+    public static final Type<Long> LONG = createPrimitive(Long.class);
     public static final Type<String> STRING = create(String.class);
-    public static final Type<Boolean> BOOLEAN = create(Boolean.class);
+    public static final Type<Boolean> BOOLEAN = createPrimitive(Boolean.class);
     public static final Type<String> JSON = create(String.class);
+    // Json that is kept as parsed elements instead of as text
+    public static final Type<JsonElement> JSON_ELEMENT = create(JsonElement.class);
 
     // Map
     public static final Type<AttributeMap> MAP = create(AttributeMap.class);
 
     @Nonnull private final Class<V> type;
+    private final boolean primitive;
 
     private Type(@Nonnull final Class<V> type) {
+        this(type, false);
+    }
+
+    private Type(@Nonnull final Class<V> type, boolean primitive) {
         this.type = type;
+        this.primitive = primitive;
     }
 
     @Nonnull
@@ -34,11 +44,20 @@ public final class Type<V> {
         return new Type<V>((Class<V>) type);
     }
 
+    @Nonnull
+    private static <V> Type<V> createPrimitive(@Nonnull final Class<V> type) {
+        return new Type<V>(type, true);
+    }
+
     @Nonnull
     public Class<V> getType() {
         return type;
     }
 
+    public boolean isPrimitive() {
+        return primitive;
+    }
+
     @Nonnull
     public List<V> convert(@Nonnull List list) {
         return (List<V>) list;
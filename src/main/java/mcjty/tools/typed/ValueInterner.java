@@ -0,0 +1,25 @@
+package mcjty.tools.typed;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Makes sure that equal values (strings, json descriptions, ...) are only kept
+ * once. Use a single interner when freezing all attribute maps of a rule pack
+ */
+public class ValueInterner {
+
+    private final Map<Object, Object> values = new HashMap<>();
+
+    public <T> T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        Object existing = values.putIfAbsent(value, value);
+        return existing == null ? value : (T) existing;
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
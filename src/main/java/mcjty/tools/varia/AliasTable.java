@@ -0,0 +1,87 @@
+package mcjty.tools.varia;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Weighted random selection in constant time (Vose's alias method). The table
+ * is built once from a list of (weight, value) pairs. Every value is picked with
+ * a chance of weight / total weight. Negative weights count as zero
+ */
+public class AliasTable<T> {
+
+    private final Object[] values;
+    private final double[] probability;
+    private final int[] alias;
+
+    public AliasTable(@Nonnull List<Pair<Float, T>> items) {
+        int n = items.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("Alias table needs at least one value!");
+        }
+        values = new Object[n];
+        probability = new double[n];
+        alias = new int[n];
+
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            Pair<Float, T> pair = items.get(i);
+            values[i] = pair.getRight();
+            total += Math.max(0, pair.getLeft());
+        }
+        if (total <= 0) {
+            // No usable weights: always pick the first value
+            return;
+        }
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = Math.max(0, items.get(i).getLeft()) * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // What remains is (up to rounding errors) exactly one
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0;
+        }
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Nonnull
+    public T get(@Nonnull Random random) {
+        int i = random.nextInt(values.length);
+        if (random.nextDouble() < probability[i]) {
+            return (T) values[i];
+        }
+        return (T) values[alias[i]];
+    }
+}
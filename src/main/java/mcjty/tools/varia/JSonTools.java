@@ -3,6 +3,8 @@ package mcjty.tools.varia;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -10,6 +12,9 @@ import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.stream.Stream;
 
 public class JSonTools {
@@ -70,6 +75,60 @@ public class JSonTools {
         }
     }
 
+    // The forEach variants below don't allocate anything per element
+
+    public static void forEachPair(JsonElement element, BiConsumer<String, String> consumer) {
+        for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().getAsString());
+        }
+    }
+
+    public static void forEachArrayOrSingle(JsonElement element, Consumer<JsonElement> consumer) {
+        if (element.isJsonArray()) {
+            for (JsonElement el : element.getAsJsonArray()) {
+                consumer.accept(el);
+            }
+        } else {
+            consumer.accept(element);
+        }
+    }
+
+    public static void forEachIntArrayOrSingle(JsonElement element, IntConsumer consumer) {
+        if (element.isJsonArray()) {
+            for (JsonElement el : element.getAsJsonArray()) {
+                consumer.accept(el.getAsInt());
+            }
+        } else {
+            consumer.accept(element.getAsInt());
+        }
+    }
+
+    /**
+     * A string that contains a json object or array is parsed, other strings
+     * (or strings that are not valid json) are returned as they are
+     */
+    public static JsonElement parseEmbedded(JsonPrimitive prim) {
+        String s = prim.getAsString().trim();
+        if (s.startsWith("{") || s.startsWith("[")) {
+            try {
+                return new JsonParser().parse(s);
+            } catch (JsonParseException e) {
+                return prim;
+            }
+        }
+        return prim;
+    }
+
+    /**
+     * Get a json element from a value of a Type.JSON (text) or Type.JSON_ELEMENT key
+     */
+    public static JsonElement toElement(Object value) {
+        if (value instanceof JsonElement) {
+            return (JsonElement) value;
+        }
+        return new JsonParser().parse(value.toString());
+    }
+
     public static void addPairs(JsonObject parent, String name, Map<String, String> pairs) {
         if (pairs != null) {
             JsonObject object = new JsonObject();
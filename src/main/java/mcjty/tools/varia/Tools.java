@@ -1,5 +1,6 @@
 package mcjty.tools.varia;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -7,9 +8,13 @@ import net.minecraft.nbt.JsonToNBT;
 import net.minecraft.nbt.NBTException;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegistryEvent;
 import net.minecraftforge.fml.common.Loader;
 import net.minecraftforge.fml.common.ModContainer;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.registry.ForgeRegistries;
+import net.minecraftforge.oredict.OreDictionary;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.Level;
@@ -19,35 +24,65 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Tools {
 
-    public static Map<String, String> modSourceID = null;
+    private static final int MAX_CACHED_STACKS = 4096;
 
-    public static String findModID(Object obj) {
-        if (modSourceID == null) {
-            modSourceID = new HashMap<>();
+    // Item spec (string or json) -> parsed stack. These templates are never handed out, only copies.
+    // In access order so that the least recently used stack is dropped when the cache is full
+    private static final Map<String, ItemStack> STACK_TEMPLATES = Collections.synchronizedMap(new LinkedHashMap<String, ItemStack>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ItemStack> eldest) {
+            return size() > MAX_CACHED_STACKS;
+        }
+    });
+
+    private static boolean invalidatorRegistered = false;
+
+    // Mod id per class. Repeated lookups for the same class don't have to look at the code source again
+    private static final ClassValue<String> MOD_IDS = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return computeModID(type);
+        }
+    };
+
+    // Holder so that the index is built only once (on first use) and safely published
+    private static class ModSources {
+        private static final Map<String, String> SOURCE_TO_MODID = createIndex();
+
+        private static Map<String, String> createIndex() {
+            Map<String, String> index = new HashMap<>();
             for (ModContainer mod : Loader.instance().getModList()) {
-                modSourceID.put(mod.getSource().getName(), mod.getModId());
+                index.put(mod.getSource().getName(), mod.getModId());
             }
 
-            modSourceID.put("1.8.0.jar", "minecraft");
-            modSourceID.put("1.8.8.jar", "minecraft");
-            modSourceID.put("1.8.9.jar", "minecraft");
-            modSourceID.put("Forge", "minecraft");
-            modSourceID.put("forge", "minecraft");
+            index.put("1.8.0.jar", "minecraft");
+            index.put("1.8.8.jar", "minecraft");
+            index.put("1.8.9.jar", "minecraft");
+            index.put("Forge", "minecraft");
+            index.put("forge", "minecraft");
+            return index;
         }
+    }
 
+    public static String findModID(Object obj) {
+        if (obj instanceof Class) {
+            return MOD_IDS.get((Class<?>) obj);
+        } else {
+            return MOD_IDS.get(obj.getClass());
+        }
+    }
 
+    private static String computeModID(Class<?> type) {
         String path;
         try {
-            if (obj instanceof Class) {
-                path = ((Class) obj).getProtectionDomain().getCodeSource().getLocation().toString();
-            } else {
-                path = obj.getClass().getProtectionDomain().getCodeSource().getLocation().toString();
-            }
+            path = type.getProtectionDomain().getCodeSource().getLocation().toString();
         } catch (Exception e) {
             return "<Unknown>";
         }
@@ -56,11 +91,21 @@ public class Tools {
         } catch (UnsupportedEncodingException e) {
             return "<Unknown>";
         }
-        String modName = "<Unknown>";
-        for (String s : modSourceID.keySet()) {
-            if (path.contains(s)) {
-                modName = modSourceID.get(s);
-                break;
+
+        Map<String, String> sources = ModSources.SOURCE_TO_MODID;
+        String modName = null;
+        // First try an exact match on the segments of the path (the jar or directory name)
+        String[] segments = StringUtils.split(path, "/!\\");
+        for (int i = segments.length - 1; i >= 0 && modName == null; i--) {
+            modName = sources.get(segments[i]);
+        }
+        if (modName == null) {
+            modName = "<Unknown>";
+            for (Map.Entry<String, String> entry : sources.entrySet()) {
+                if (path.contains(entry.getKey())) {
+                    modName = entry.getValue();
+                    break;
+                }
             }
         }
         if (modName.equals("Minecraft Coder Pack")) {
@@ -105,8 +150,72 @@ public class Tools {
         return Pair.of(factor, stack);
     }
 
+    /**
+     * Forget all cached item stacks. This is done automatically when items are registered
+     * or remapped and when the ore dictionary changes
+     */
+    public static void clearStackCache() {
+        STACK_TEMPLATES.clear();
+    }
+
+    // Only successfully parsed stacks are cached so that errors are still reported every time
+    private static ItemStack getCachedStack(String spec, ItemStack stack) {
+        if (stack != null && !stack.isEmpty()) {
+            synchronized (STACK_TEMPLATES) {
+                if (!invalidatorRegistered) {
+                    invalidatorRegistered = true;
+                    MinecraftForge.EVENT_BUS.register(new StackCacheInvalidator());
+                }
+                STACK_TEMPLATES.putIfAbsent(spec, stack);
+            }
+            return stack.copy();
+        }
+        return stack;
+    }
+
+    // The factor is not part of the stack so it is left out of the key
+    private static String getSpec(JsonObject obj) {
+        if (!obj.has("factor")) {
+            return obj.toString();
+        }
+        JsonObject spec = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+            if (!"factor".equals(entry.getKey())) {
+                spec.add(entry.getKey(), entry.getValue());
+            }
+        }
+        return spec.toString();
+    }
+
+    public static class StackCacheInvalidator {
+
+        @SubscribeEvent
+        public void onItemsRegistered(RegistryEvent.Register<Item> event) {
+            clearStackCache();
+        }
+
+        @SubscribeEvent
+        public void onItemsRemapped(RegistryEvent.MissingMappings<Item> event) {
+            clearStackCache();
+        }
+
+        @SubscribeEvent
+        public void onOreRegistered(OreDictionary.OreRegisterEvent event) {
+            clearStackCache();
+        }
+    }
+
     @Nonnull
     public static ItemStack parseStack(String name, Logger logger) {
+        ItemStack template = STACK_TEMPLATES.get(name);
+        if (template != null) {
+            return template.copy();
+        }
+        return getCachedStack(name, parseStackUncached(name, logger));
+    }
+
+    @Nonnull
+    private static ItemStack parseStackUncached(String name, Logger logger) {
         if (name.contains("/")) {
             String[] split = StringUtils.split(name, "/");
             ItemStack stack = parseStackNoNBT(split[0], logger);
@@ -129,6 +238,16 @@ public class Tools {
 
     @Nullable
     public static ItemStack parseStack(JsonObject obj, Logger logger) {
+        String spec = getSpec(obj);
+        ItemStack template = STACK_TEMPLATES.get(spec);
+        if (template != null) {
+            return template.copy();
+        }
+        return getCachedStack(spec, parseStackUncached(obj, logger));
+    }
+
+    @Nullable
+    private static ItemStack parseStackUncached(JsonObject obj, Logger logger) {
         if (obj.has("empty")) {
             return ItemStack.EMPTY;
         }
@@ -0,0 +1,64 @@
+package mcjty.tools.typed;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AttributeMapTest {
+
+    private static final Key<JsonElement> ELEMENT = Key.create(Type.JSON_ELEMENT, "element");
+    private static final Key<JsonElement> ELEMENTS = Key.create(Type.JSON_ELEMENT, "elements");
+    private static final Key<Integer> NUMBER = Key.create(Type.INTEGER, "number");
+
+    @Test
+    public void testFreezeCopiesJson() {
+        JsonObject single = new JsonObject();
+        single.addProperty("block", "minecraft:stone");
+        JsonObject listed = new JsonObject();
+        listed.addProperty("item", "minecraft:apple");
+
+        AttributeMap map = new AttributeMap();
+        map.set(ELEMENT, single);
+        map.addList(ELEMENTS, listed);
+        AttributeMap frozen = map.freeze();
+
+        single.addProperty("block", "minecraft:dirt");
+        listed.add("nbt", new JsonObject());
+        assertEquals(new JsonPrimitive("minecraft:stone"), frozen.get(ELEMENT).getAsJsonObject().get("block"));
+        assertFalse(frozen.getList(ELEMENTS).get(0).getAsJsonObject().has("nbt"));
+    }
+
+    @Test
+    public void testInternShares() {
+        ValueInterner interner = new ValueInterner();
+        AttributeMap a = new AttributeMap();
+        a.set(ELEMENT, new JsonPrimitive("minecraft:stone"));
+        AttributeMap b = new AttributeMap();
+        b.set(ELEMENT, new JsonPrimitive("minecraft:stone"));
+        assertTrue(a.freeze(interner).get(ELEMENT) == b.freeze(interner).get(ELEMENT));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFrozenIsReadOnly() {
+        AttributeMap map = new AttributeMap();
+        map.set(ELEMENT, new JsonPrimitive(1));
+        map.freeze().set(ELEMENT, new JsonPrimitive(2));
+    }
+
+    @Test
+    public void testNullPrimitive() {
+        AttributeMap map = new AttributeMap();
+        map.setInt(NUMBER, 5);
+        map.set(NUMBER, null);
+        assertTrue(map.has(NUMBER));
+        assertNull(map.get(NUMBER));
+        assertEquals(0, map.getInt(NUMBER));
+        assertNull(map.freeze().get(NUMBER));
+
+        map.set(NUMBER, 7);
+        assertEquals(Integer.valueOf(7), map.get(NUMBER));
+    }
+}
@@ -0,0 +1,180 @@
+package mcjty.tools.typed;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * parse -> write -> parse has to give the same map for every type, for single
+ * and for multiple values
+ */
+public class GenericAttributeMapFactoryTest {
+
+    private static final Key<Integer> INT = Key.create(Type.INTEGER, "int");
+    private static final Key<Long> LONG = Key.create(Type.LONG, "long");
+    private static final Key<Float> FLOAT = Key.create(Type.FLOAT, "float");
+    private static final Key<Double> DOUBLE = Key.create(Type.DOUBLE, "double");
+    private static final Key<Boolean> BOOL = Key.create(Type.BOOLEAN, "bool");
+    private static final Key<String> STRING = Key.create(Type.STRING, "string");
+    private static final Key<String> JSON = Key.create(Type.JSON, "json");
+    private static final Key<JsonElement> ELEMENT = Key.create(Type.JSON_ELEMENT, "element");
+
+    private static final Key<Integer> INTS = Key.create(Type.INTEGER, "ints");
+    private static final Key<Long> LONGS = Key.create(Type.LONG, "longs");
+    private static final Key<Float> FLOATS = Key.create(Type.FLOAT, "floats");
+    private static final Key<Double> DOUBLES = Key.create(Type.DOUBLE, "doubles");
+    private static final Key<Boolean> BOOLS = Key.create(Type.BOOLEAN, "bools");
+    private static final Key<String> STRINGS = Key.create(Type.STRING, "strings");
+    private static final Key<String> JSONS = Key.create(Type.JSON, "jsons");
+    private static final Key<JsonElement> ELEMENTS = Key.create(Type.JSON_ELEMENT, "elements");
+
+    private static final List<Key<?>> SINGLE = Arrays.asList(INT, LONG, FLOAT, DOUBLE, BOOL, STRING, JSON, ELEMENT);
+    private static final List<Key<?>> MULTI = Arrays.asList(INTS, LONGS, FLOATS, DOUBLES, BOOLS, STRINGS, JSONS, ELEMENTS);
+
+    private static GenericAttributeMapFactory createFactory() {
+        GenericAttributeMapFactory factory = new GenericAttributeMapFactory();
+        for (Key<?> key : SINGLE) {
+            factory.attribute(Attribute.create(key));
+        }
+        for (Key<?> key : MULTI) {
+            factory.attribute(Attribute.createMulti(key));
+        }
+        return factory;
+    }
+
+    private static String write(GenericAttributeMapFactory factory, AttributeMap map) throws IOException {
+        StringWriter writer = new StringWriter();
+        factory.write(writer, Collections.singletonList(map));
+        return writer.toString();
+    }
+
+    private static AttributeMap read(GenericAttributeMapFactory factory, String json) throws IOException {
+        List<AttributeMap> maps = new ArrayList<>();
+        factory.parse(new StringReader(json), maps::add);
+        assertEquals(1, maps.size());
+        return maps.get(0);
+    }
+
+    private static void assertSameValues(AttributeMap expected, AttributeMap actual) {
+        for (Key<?> key : SINGLE) {
+            assertEquals(key.getName(), expected.has(key), actual.has(key));
+            assertEquals(key.getName(), expected.get(key), actual.get(key));
+        }
+        for (Key<?> key : MULTI) {
+            assertEquals(key.getName(), expected.has(key), actual.has(key));
+            assertEquals(key.getName(), expected.getList(key), actual.getList(key));
+        }
+    }
+
+    private static AttributeMap roundTrip(String json) throws IOException {
+        GenericAttributeMapFactory factory = createFactory();
+        AttributeMap first = factory.parse(new JsonParser().parse(json));
+        String written = write(factory, first);
+        AttributeMap second = read(factory, written);
+        assertSameValues(first, second);
+        // Writing again gives exactly the same text
+        assertEquals(written, write(factory, second));
+        return second;
+    }
+
+    @Test
+    public void testSingleValues() throws IOException {
+        AttributeMap map = roundTrip("{ 'int': -3, 'long': 12345678901, 'float': 1.5, 'double': 0.1, 'bool': true,"
+                + " 'string': 'minecraft:stone', 'json': { 'item': 'minecraft:apple', 'count': 2 },"
+                + " 'element': { 'block': 'minecraft:dirt' } }");
+        assertEquals(-3, map.getInt(INT));
+        assertEquals(12345678901L, map.getLong(LONG));
+        assertEquals(1.5f, map.getFloat(FLOAT), 0);
+        assertEquals(0.1, map.getDouble(DOUBLE), 0);
+        assertTrue(map.getBoolean(BOOL));
+        assertEquals("minecraft:stone", map.get(STRING));
+        assertEquals(new JsonParser().parse("{ 'item': 'minecraft:apple', 'count': 2 }").toString(), map.get(JSON));
+        assertTrue(map.get(ELEMENT).isJsonObject());
+    }
+
+    @Test
+    public void testSingleJsonPrimitives() throws IOException {
+        AttributeMap map = roundTrip("{ 'json': 'minecraft:stone', 'element': 5 }");
+        assertEquals("minecraft:stone", map.get(JSON));
+        assertEquals(5, map.get(ELEMENT).getAsInt());
+    }
+
+    @Test
+    public void testEmbeddedJsonString() throws IOException {
+        AttributeMap map = roundTrip("{ 'element': '{\"block\": \"minecraft:dirt\"}' }");
+        assertTrue(map.get(ELEMENT).isJsonObject());
+        assertEquals("minecraft:dirt", map.get(ELEMENT).getAsJsonObject().get("block").getAsString());
+    }
+
+    @Test
+    public void testMultipleValues() throws IOException {
+        AttributeMap map = roundTrip("{ 'ints': [1, 2, 3], 'longs': [1, 12345678901], 'floats': [0.5, 2],"
+                + " 'doubles': [0.25, -1], 'bools': [true, false], 'strings': ['a', 'b'],"
+                + " 'jsons': ['minecraft:stone', { 'item': 'minecraft:apple' }],"
+                + " 'elements': ['minecraft:dirt', { 'block': 'minecraft:sand' }] }");
+        assertArrayEquals(new int[] { 1, 2, 3 }, map.getIntList(INTS).toIntArray());
+        assertEquals(Arrays.asList(1L, 12345678901L), map.getList(LONGS));
+        assertEquals(Arrays.asList(0.5f, 2f), map.getList(FLOATS));
+        assertEquals(Arrays.asList(0.25, -1.0), map.getList(DOUBLES));
+        assertEquals(Arrays.asList(true, false), map.getList(BOOLS));
+        assertEquals(Arrays.asList("a", "b"), map.getList(STRINGS));
+        assertEquals(2, map.getList(JSONS).size());
+        assertEquals(2, map.getList(ELEMENTS).size());
+    }
+
+    @Test
+    public void testMultipleWithSingleValue() throws IOException {
+        // A single value for a multi attribute is written back as a single value
+        AttributeMap map = roundTrip("{ 'ints': 7, 'strings': 'a', 'elements': { 'block': 'minecraft:sand' } }");
+        assertArrayEquals(new int[] { 7 }, map.getIntList(INTS).toIntArray());
+        assertEquals(Collections.singletonList("a"), map.getList(STRINGS));
+        assertEquals(1, map.getList(ELEMENTS).size());
+    }
+
+    @Test
+    public void testMissingAndUnknown() throws IOException {
+        AttributeMap map = roundTrip("{ 'unknown': [1, 2], 'int': 1 }");
+        assertTrue(map.has(INT));
+        for (Key<?> key : MULTI) {
+            assertFalse(map.has(key));
+        }
+    }
+
+    @Test
+    public void testFrozenRoundTrip() throws IOException {
+        GenericAttributeMapFactory factory = createFactory();
+        String json = "{ 'int': 4, 'strings': ['a', 'b'], 'elements': ['x', { 'block': 'y' }] }";
+        AttributeMap map = factory.parse(new JsonParser().parse(json));
+        AttributeMap frozen = factory.parse(new JsonParser().parse(json), new ValueInterner());
+        assertTrue(frozen.isFrozen());
+        assertSameValues(map, frozen);
+        assertEquals(write(factory, map), write(factory, frozen));
+    }
+
+    @Test
+    public void testStreamingArray() throws IOException {
+        GenericAttributeMapFactory factory = createFactory();
+        List<AttributeMap> maps = new ArrayList<>();
+        factory.parse(new StringReader("[ { 'int': 1 }, { 'int': 2, 'strings': ['a'] } ]"), maps::add);
+        assertEquals(2, maps.size());
+
+        StringWriter writer = new StringWriter();
+        factory.write(writer, maps);
+        List<AttributeMap> again = new ArrayList<>();
+        factory.parse(new StringReader(writer.toString()), again::add);
+        assertEquals(2, again.size());
+        for (int i = 0; i < maps.size(); i++) {
+            assertSameValues(maps.get(i), again.get(i));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package mcjty.tools.varia;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AliasTableTest {
+
+    @Test
+    public void testDistribution() {
+        AliasTable<String> table = new AliasTable<>(Arrays.asList(Pair.of(1.0f, "a"), Pair.of(3.0f, "b"), Pair.of(0.0f, "c")));
+        Random random = new Random(1234);
+        int a = 0;
+        int b = 0;
+        int samples = 100000;
+        for (int i = 0; i < samples; i++) {
+            String value = table.get(random);
+            if ("a".equals(value)) {
+                a++;
+            } else if ("b".equals(value)) {
+                b++;
+            } else {
+                fail("Value with weight 0 was picked");
+            }
+        }
+        assertEquals(0.25, a / (double) samples, 0.01);
+        assertEquals(0.75, b / (double) samples, 0.01);
+    }
+
+    @Test
+    public void testNoWeights() {
+        AliasTable<String> table = new AliasTable<>(Arrays.asList(Pair.of(0.0f, "a"), Pair.of(-1.0f, "b")));
+        Random random = new Random(1234);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a", table.get(random));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        new AliasTable<String>(Collections.emptyList());
+    }
+}